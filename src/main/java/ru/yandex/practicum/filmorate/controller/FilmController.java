@@ -1,11 +1,25 @@
 package ru.yandex.practicum.filmorate.controller;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.model.CacheStats;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmBatchResult;
+import ru.yandex.practicum.filmorate.model.FilmBrowseResult;
+import ru.yandex.practicum.filmorate.model.LikeImportResult;
+import ru.yandex.practicum.filmorate.model.SuggestStats;
+import ru.yandex.practicum.filmorate.model.Suggestion;
+import ru.yandex.practicum.filmorate.model.dto.FilmFilter;
+import ru.yandex.practicum.filmorate.model.enums.ExportFormat;
 import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.LikeImportService;
 
 import javax.validation.Valid;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 import java.util.Optional;
 
@@ -15,10 +29,27 @@ import java.util.Optional;
 public class FilmController {
 
     private final FilmService filmService;
+    private final LikeImportService likeImportService;
 
     @GetMapping
-    public List<Film> findAll() {
-        return filmService.findAll();
+    public ResponseEntity<List<Film>> findAll(@RequestParam(required = false) String after,
+                                              @RequestParam(required = false) Integer limit) {
+        if (after == null && limit == null) {
+            return ResponseEntity.ok(filmService.findAll());
+        }
+        return Pages.toResponse(filmService.findPage(after, limit));
+    }
+
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> export(@RequestParam(defaultValue = "ndjson") String format) {
+        ExportFormat exportFormat = filmService.getExportFormat(format);
+        MediaType mediaType = exportFormat == ExportFormat.JSON
+                ? MediaType.APPLICATION_JSON
+                : MediaType.parseMediaType("application/x-ndjson");
+
+        return ResponseEntity.ok()
+                .contentType(mediaType)
+                .body(out -> filmService.export(exportFormat, out));
     }
 
     @PostMapping
@@ -26,6 +57,11 @@ public class FilmController {
         return filmService.create(film);
     }
 
+    @PostMapping("/batch")
+    public List<FilmBatchResult> createAll(@RequestBody List<Film> films) {
+        return filmService.createAll(films);
+    }
+
     @PutMapping
     public Film update(@RequestBody @Valid Film film) {
         return filmService.update(film);
@@ -41,6 +77,11 @@ public class FilmController {
         filmService.addLike(id, userId);
     }
 
+    @PostMapping("/likes/import")
+    public LikeImportResult importLikes(InputStream body) throws IOException {
+        return likeImportService.importLikes(body);
+    }
+
     @DeleteMapping("/{id}/like/{userId}")
     public void removeLike(@PathVariable Integer id, @PathVariable Integer userId) {
         filmService.removeLike(id, userId);
@@ -53,17 +94,52 @@ public class FilmController {
         return filmService.getPopular(count, genreId, year);
     }
 
+    @GetMapping("/{id}/similar")
+    public List<Film> getSimilar(@PathVariable Integer id,
+                                 @RequestParam(defaultValue = "10", required = false) Integer count) {
+        return filmService.getSimilar(id, count);
+    }
+
     @GetMapping("/director/{directorId}")
     public List<Film> getByDirectorId(@PathVariable Integer directorId,
                                       @RequestParam String sortBy) {
         return filmService.getByDirectorId(directorId, sortBy);
     }
 
+    @GetMapping("/browse")
+    public FilmBrowseResult browse(@RequestParam(required = false) Integer genre,
+                                   @RequestParam(required = false) Integer mpa,
+                                   @RequestParam(required = false) Integer yearFrom,
+                                   @RequestParam(required = false) Integer yearTo,
+                                   @RequestParam(required = false) Integer director,
+                                   @RequestParam(defaultValue = "likes") String sort,
+                                   @RequestParam(defaultValue = "10") Integer count) {
+        FilmFilter filter = FilmFilter.builder()
+                .genre(genre)
+                .mpa(mpa)
+                .director(director)
+                .yearFrom(yearFrom)
+                .yearTo(yearTo)
+                .build();
+        return filmService.browse(filter, sort, count);
+    }
+
     @GetMapping("/search")
     public List<Film> searchFilms(@RequestParam String query, @RequestParam String by) {
         return filmService.search(query, by);
     }
 
+    @GetMapping("/suggest")
+    public List<Suggestion> suggest(@RequestParam String prefix,
+                                    @RequestParam(defaultValue = "10", required = false) Integer limit) {
+        return filmService.suggest(prefix, limit);
+    }
+
+    @GetMapping("/suggest/stats")
+    public SuggestStats getSuggestStats() {
+        return filmService.getSuggestStats();
+    }
+
     @DeleteMapping("/{filmId}")
     public void deleteById(@PathVariable Integer filmId) {
         filmService.deleteById(filmId);
@@ -73,4 +149,9 @@ public class FilmController {
     public List<Film> getCommonFilms(@RequestParam Integer userId, @RequestParam Integer friendId) {
         return filmService.getCommonFilms(userId, friendId);
     }
+
+    @GetMapping("/cache/stats")
+    public CacheStats getCacheStats() {
+        return filmService.getCacheStats();
+    }
 }
@@ -0,0 +1,25 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.springframework.http.ResponseEntity;
+import ru.yandex.practicum.filmorate.model.Page;
+import ru.yandex.practicum.filmorate.service.Cursor;
+
+import java.util.List;
+
+final class Pages {
+
+    private Pages() {
+    }
+
+    /**
+     * Returns the page items as the body and the cursor of the next page, if any, in the {@code X-Next-Cursor}
+     * header, so paginated and legacy responses share the same body shape.
+     */
+    static <T> ResponseEntity<List<T>> toResponse(Page<T> page) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNext() != null) {
+            response.header(Cursor.NEXT_HEADER, page.getNext());
+        }
+        return response.body(page.getItems());
+    }
+}
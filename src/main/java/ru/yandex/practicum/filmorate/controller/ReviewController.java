@@ -1,6 +1,7 @@
 package ru.yandex.practicum.filmorate.controller;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import ru.yandex.practicum.filmorate.model.Review;
 import ru.yandex.practicum.filmorate.service.ReviewService;
@@ -15,9 +16,21 @@ public class ReviewController {
     private final ReviewService reviewService;
 
     @GetMapping
-    public List<Review> findAll(@RequestParam(required = false) Integer filmId,
-                                @RequestParam(required = false, defaultValue = "10") Integer count) {
-        return reviewService.findAll(filmId, count);
+    public ResponseEntity<List<Review>> findAll(@RequestParam(required = false) Integer filmId,
+                                                @RequestParam(required = false, defaultValue = "10") Integer count,
+                                                @RequestParam(required = false) String after,
+                                                @RequestParam(required = false) Integer limit) {
+        if (after == null && limit == null) {
+            return ResponseEntity.ok(reviewService.findAll(filmId, count));
+        }
+        return Pages.toResponse(reviewService.findPage(filmId, after, limit));
+    }
+
+    @GetMapping("/search")
+    public List<Review> search(@RequestParam String q,
+                               @RequestParam(required = false) Integer filmId,
+                               @RequestParam(required = false, defaultValue = "10") Integer count) {
+        return reviewService.search(q, filmId, count);
     }
 
     @PostMapping
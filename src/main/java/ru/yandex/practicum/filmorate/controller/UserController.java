@@ -1,9 +1,13 @@
 package ru.yandex.practicum.filmorate.controller;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import ru.yandex.practicum.filmorate.model.Feed;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FriendGraphStats;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.service.UserService;
 
@@ -18,8 +22,12 @@ public class UserController {
     private final UserService userService;
 
     @GetMapping
-    public List<User> findAll() {
-        return userService.findAll();
+    public ResponseEntity<List<User>> findAll(@RequestParam(required = false) String after,
+                                              @RequestParam(required = false) Integer limit) {
+        if (after == null && limit == null) {
+            return ResponseEntity.ok(userService.findAll());
+        }
+        return Pages.toResponse(userService.findPage(after, limit));
     }
 
     @PostMapping
@@ -57,9 +65,42 @@ public class UserController {
         return userService.getCommonFriends(id, otherId);
     }
 
+    @GetMapping("/{id}/friends/suggestions")
+    public List<User> getFriendSuggestions(@PathVariable Integer id,
+                                           @RequestParam(defaultValue = "10") Integer limit) {
+        return userService.getFriendSuggestions(id, limit);
+    }
+
+    @GetMapping("/graph/stats")
+    public FriendGraphStats getFriendGraphStats() {
+        return userService.getFriendGraphStats();
+    }
+
     @GetMapping("/{id}/feed")
-    public List<Feed> getFeed(@PathVariable Integer id) {
-        return userService.getFeedByUserId(id);
+    public ResponseEntity<List<Feed>> getFeed(@PathVariable Integer id,
+                                              @RequestParam(required = false) String after,
+                                              @RequestParam(required = false) String before,
+                                              @RequestParam(required = false) Integer limit) {
+        if (before != null) {
+            return Pages.toResponse(userService.getFeedPageBeforeByUserId(id, before, limit));
+        }
+        if (after == null && limit == null) {
+            return ResponseEntity.ok(userService.getFeedByUserId(id));
+        }
+        return Pages.toResponse(userService.getFeedPageByUserId(id, after, limit));
+    }
+
+    @GetMapping("/{id}/feed/friends")
+    public ResponseEntity<List<Feed>> getFriendsFeed(@PathVariable Integer id,
+                                                     @RequestParam(required = false) String before,
+                                                     @RequestParam(required = false) Integer limit) {
+        return Pages.toResponse(userService.getFriendsFeed(id, before, limit));
+    }
+
+    @GetMapping(value = "/{id}/feed/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamFeed(@PathVariable Integer id,
+                                 @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+        return userService.streamFeed(id, lastEventId);
     }
 
     @DeleteMapping("/{userId}")
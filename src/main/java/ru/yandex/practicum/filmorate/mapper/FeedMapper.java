@@ -19,8 +19,8 @@ public class FeedMapper implements RowMapper<Feed> {
                 .entityId(rs.getInt("id_entity"))
                 .userId(rs.getInt("id_user"))
                 .timestamp(rs.getLong("timestamp"))
-                .eventType(EventType.valueOf(rs.getString("event_type")))
-                .operation(Operation.valueOf(rs.getString("operation")))
+                .eventType(EventType.values()[rs.getInt("event_type")])
+                .operation(Operation.values()[rs.getInt("operation")])
                 .build();
     }
 }
@@ -0,0 +1,16 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Builder;
+import lombok.Value;
+
+@Value
+@Builder
+public class CacheStats {
+    int size;
+    int maxSize;
+    long hits;
+    long misses;
+    long evictions;
+    long expirations;
+    double hitRate;
+}
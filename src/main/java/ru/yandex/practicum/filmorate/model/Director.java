@@ -1,14 +1,16 @@
 package ru.yandex.practicum.filmorate.model;
 
 import lombok.Builder;
-import lombok.Data;
+import lombok.Value;
+import lombok.extern.jackson.Jacksonized;
 
 import javax.validation.constraints.NotBlank;
 
-@Data
-@Builder
+@Value
+@Builder(toBuilder = true)
+@Jacksonized
 public class Director {
-    private int id;
+    int id;
     @NotBlank
-    private String name;
+    String name;
 }
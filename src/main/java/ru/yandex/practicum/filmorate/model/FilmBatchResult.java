@@ -0,0 +1,16 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Outcome of one item of a {@code POST /films/batch} payload: the id of the created film,
+ * or the validation error that rejected it.
+ */
+@Value
+@Builder
+public class FilmBatchResult {
+    int index;
+    Integer id;
+    String error;
+}
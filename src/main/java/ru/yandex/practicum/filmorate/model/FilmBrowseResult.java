@@ -0,0 +1,19 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One page of {@code GET /films/browse}: the first films of the selection, its size and, per attribute,
+ * the number of films each value would select together with the other filters.
+ */
+@Value
+@Builder
+public class FilmBrowseResult {
+    List<Film> films;
+    int total;
+    Map<String, Map<Integer, Integer>> facets;
+}
@@ -0,0 +1,13 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Builder;
+import lombok.Value;
+
+@Value
+@Builder
+public class FriendGraphStats {
+    int users;
+    long edges;
+    long estimatedBytes;
+    double bytesPerEdge;
+}
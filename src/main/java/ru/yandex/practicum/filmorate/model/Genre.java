@@ -1,11 +1,11 @@
 package ru.yandex.practicum.filmorate.model;
 
-import lombok.Data;
+import lombok.Value;
 
-@Data
+@Value
 public class Genre {
-    private int id;
-    private String name;
+    int id;
+    String name;
 
     public Genre(int id, String name) {
         this.id = id;
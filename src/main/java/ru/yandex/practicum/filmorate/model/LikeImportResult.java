@@ -0,0 +1,16 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.List;
+
+@Value
+@Builder
+public class LikeImportResult {
+    long read;
+    long imported;
+    long duplicates;
+    long rejected;
+    List<String> errors;
+}
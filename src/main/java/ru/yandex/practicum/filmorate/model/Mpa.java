@@ -1,13 +1,13 @@
 package ru.yandex.practicum.filmorate.model;
 
-import lombok.Data;
+import lombok.Value;
 
-@Data
+@Value
 public class Mpa {
 
-    private int id;
-    private String name;
-    private String description;
+    int id;
+    String name;
+    String description;
 
     public Mpa(int id, String name, String description) {
         this.id = id;
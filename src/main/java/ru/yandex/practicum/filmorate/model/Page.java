@@ -0,0 +1,15 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * One page of a keyset-paginated listing. {@code next} is the opaque cursor of the following page,
+ * or {@code null} when this page is the last one.
+ */
+@Value
+public class Page<T> {
+    List<T> items;
+    String next;
+}
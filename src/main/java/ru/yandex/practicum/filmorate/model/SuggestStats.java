@@ -0,0 +1,13 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Builder;
+import lombok.Value;
+
+@Value
+@Builder
+public class SuggestStats {
+    int nodes;
+    int entries;
+    int topSize;
+    long estimatedBytes;
+}
@@ -0,0 +1,14 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Builder;
+import lombok.Value;
+import ru.yandex.practicum.filmorate.model.enums.SuggestionType;
+
+@Value
+@Builder
+public class Suggestion {
+    String text;
+    SuggestionType type;
+    int id;
+    int likes;
+}
@@ -0,0 +1,17 @@
+package ru.yandex.practicum.filmorate.model.dto;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Attribute filters of {@code GET /films/browse}; a {@code null} field does not restrict the selection.
+ */
+@Value
+@Builder
+public class FilmFilter {
+    Integer genre;
+    Integer mpa;
+    Integer director;
+    Integer yearFrom;
+    Integer yearTo;
+}
@@ -0,0 +1,13 @@
+package ru.yandex.practicum.filmorate.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LikeImportRecord {
+    private Integer filmId;
+    private Integer userId;
+}
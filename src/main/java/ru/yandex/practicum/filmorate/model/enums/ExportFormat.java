@@ -0,0 +1,6 @@
+package ru.yandex.practicum.filmorate.model.enums;
+
+public enum ExportFormat {
+    NDJSON,
+    JSON
+}
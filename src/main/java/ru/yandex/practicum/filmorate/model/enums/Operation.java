@@ -1,5 +1,8 @@
 package ru.yandex.practicum.filmorate.model.enums;
 
+/**
+ * Stored in {@code feed} by ordinal: append new constants at the end.
+ */
 public enum Operation {
     REMOVE,
     ADD,
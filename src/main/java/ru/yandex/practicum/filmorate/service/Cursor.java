@@ -0,0 +1,77 @@
+package ru.yandex.practicum.filmorate.service;
+
+import ru.yandex.practicum.filmorate.exception.BadRequestException;
+import ru.yandex.practicum.filmorate.model.Page;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+
+import static java.lang.String.format;
+import static java.util.stream.Collectors.joining;
+
+/**
+ * Opaque keyset cursors: the sort key of the last returned row, base64url-encoded.
+ * <p>
+ * Pages are fetched with one extra row; if it is present, the cursor of the last row of the page is handed out
+ * as {@code next}.
+ */
+public final class Cursor {
+
+    public static final String NEXT_HEADER = "X-Next-Cursor";
+
+    private static final int DEFAULT_LIMIT = 100;
+    private static final int MAX_LIMIT = 1000;
+
+    private Cursor() {
+    }
+
+    public static String encode(long... keys) {
+        String raw = Arrays.stream(keys).mapToObj(Long::toString).collect(joining(":"));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns the {@code size} keys of the cursor, or {@code null} for the first page.
+     */
+    public static long[] decode(String cursor, int size) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            long[] keys = Arrays.stream(raw.split(":")).mapToLong(Long::parseLong).toArray();
+            if (keys.length != size) {
+                throw new IllegalArgumentException();
+            }
+            return keys;
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException(format("Incorrect cursor: %s", cursor));
+        }
+    }
+
+    public static int limit(Integer limit) {
+        if (limit == null) {
+            return DEFAULT_LIMIT;
+        }
+        if (limit <= 0 || limit > MAX_LIMIT) {
+            throw new BadRequestException(format("Incorrect parameters value: %s", limit));
+        }
+        return limit;
+    }
+
+    /**
+     * Builds a page from rows fetched with {@code limit + 1}.
+     */
+    public static <T> Page<T> page(List<T> rows, int limit, Function<T, String> cursorOf) {
+        if (rows.size() <= limit) {
+            return new Page<>(rows, null);
+        }
+
+        List<T> items = rows.subList(0, limit);
+        return new Page<>(items, cursorOf.apply(items.get(limit - 1)));
+    }
+}
@@ -6,6 +6,7 @@ import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Director;
 import ru.yandex.practicum.filmorate.storage.DirectorStorage;
+import ru.yandex.practicum.filmorate.storage.cache.ReferenceDataRegistry;
 
 import java.util.List;
 
@@ -16,13 +17,14 @@ import static java.lang.String.format;
 public class DirectorService {
 
     private final DirectorStorage directorStorage;
+    private final ReferenceDataRegistry referenceDataRegistry;
 
     public List<Director> findAll() {
-        return directorStorage.findAll();
+        return referenceDataRegistry.findAllDirectors();
     }
 
     public Director getById(Integer id) {
-        return directorStorage.findById(id)
+        return referenceDataRegistry.findDirectorById(id)
                 .orElseThrow(() -> new NotFoundException(format("Director with id: %d not found in DB", id)));
     }
 
@@ -0,0 +1,51 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.storage.FeedStorage;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Periodically moves feed events older than the retention period out of {@code feed} into compressed
+ * {@code feed_archive} segments, so the live table only grows with recent activity.
+ */
+@Slf4j
+@Service
+public class FeedRetentionJob {
+
+    private final FeedStorage feedStorage;
+    private final FeedWriter feedWriter;
+    private final TimelineService timelineService;
+    private final Duration retention;
+    private final int segmentSize;
+
+    public FeedRetentionJob(FeedStorage feedStorage,
+                            FeedWriter feedWriter,
+                            TimelineService timelineService,
+                            @Value("${filmorate.feed.retention:365d}") Duration retention,
+                            @Value("${filmorate.feed.archive-segment-size:1000}") int segmentSize) {
+        this.feedStorage = feedStorage;
+        this.feedWriter = feedWriter;
+        this.timelineService = timelineService;
+        this.retention = retention;
+        this.segmentSize = segmentSize;
+    }
+
+    @Scheduled(fixedDelayString = "${filmorate.feed.retention-interval:PT1H}",
+            initialDelayString = "${filmorate.feed.retention-interval:PT1H}")
+    public void archive() {
+        feedWriter.flush();
+        long start = System.nanoTime();
+        int archived = feedStorage.archiveOlderThan(Instant.now().minus(retention).toEpochMilli(), segmentSize);
+
+        if (archived > 0) {
+            timelineService.rebuild();
+            log.info("Archived {} feed events older than {} in {} ms",
+                    archived, retention, (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+}
@@ -3,6 +3,7 @@ package ru.yandex.practicum.filmorate.service;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.model.Feed;
+import ru.yandex.practicum.filmorate.model.Page;
 import ru.yandex.practicum.filmorate.model.enums.EventType;
 import ru.yandex.practicum.filmorate.model.enums.Operation;
 import ru.yandex.practicum.filmorate.storage.FeedStorage;
@@ -15,13 +16,48 @@ import java.util.List;
 public class FeedService {
 
     private final FeedStorage feedStorage;
+    private final FeedWriter feedWriter;
 
     public void add(int idEntity, int idUser, EventType eventType, Operation operation) {
-        long timestamp = Instant.now().toEpochMilli();
-        feedStorage.addFeed(idEntity, idUser, timestamp, eventType, operation);
+        feedWriter.write(Feed.builder()
+                .entityId(idEntity)
+                .userId(idUser)
+                .timestamp(Instant.now().toEpochMilli())
+                .eventType(eventType)
+                .operation(operation)
+                .build());
+    }
+
+    public void addAll(List<Feed> events) {
+        if (!events.isEmpty()) {
+            feedStorage.addFeeds(events);
+        }
     }
 
     public List<Feed> getByUserId(int id) {
+        feedWriter.flush();
         return feedStorage.findByUserId(id);
     }
+
+    public Page<Feed> getPageByUserId(int id, String after, Integer limit) {
+        feedWriter.flush();
+        long[] keys = Cursor.decode(after, 2);
+        int size = Cursor.limit(limit);
+
+        List<Feed> events = keys == null
+                ? feedStorage.findPageByUserId(id, null, null, size + 1)
+                : feedStorage.findPageByUserId(id, keys[0], keys[1], size + 1);
+        return Cursor.page(events, size, feed -> Cursor.encode(feed.getTimestamp(), feed.getEventId()));
+    }
+
+    public Page<Feed> getPageBeforeByUserId(int id, String before, Integer limit) {
+        feedWriter.flush();
+        long[] keys = Cursor.decode(before, 2);
+        int size = Cursor.limit(limit);
+
+        List<Feed> events = keys == null
+                ? feedStorage.findPageBeforeByUserId(id, null, null, size + 1)
+                : feedStorage.findPageBeforeByUserId(id, keys[0], keys[1], size + 1);
+        return Cursor.page(events, size, feed -> Cursor.encode(feed.getTimestamp(), feed.getEventId()));
+    }
 }
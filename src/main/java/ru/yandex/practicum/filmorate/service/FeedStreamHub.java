@@ -0,0 +1,223 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import ru.yandex.practicum.filmorate.model.Feed;
+import ru.yandex.practicum.filmorate.storage.FeedStorage;
+import ru.yandex.practicum.filmorate.storage.event.FeedEvent;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pushes stored feed events to the users' Server-Sent Events subscribers.
+ * <p>
+ * Publishing never waits for a client: every subscriber has its own bounded buffer, which is drained by a small
+ * dispatcher pool, at most one thread per subscriber at a time. A subscriber whose buffer overflows is evicted and
+ * its stream closed; the client reconnects with {@code Last-Event-ID} and receives the events it missed from
+ * {@code feed} before the live ones. Live events are sent in the order their transactions commit, which in
+ * {@code sync} write mode is not necessarily the order of their ids, so none of them is filtered by id; only those
+ * already sent by the replay are skipped.
+ */
+@Slf4j
+@Component
+public class FeedStreamHub {
+
+    private static final String FEED_EVENT = "feed";
+    private static final String RESET_EVENT = "reset";
+
+    private final FeedStorage feedStorage;
+    private final int bufferSize;
+    private final int replayLimit;
+    private final long timeoutMillis;
+    private final ExecutorService dispatcher;
+
+    private final Map<Integer, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+
+    public FeedStreamHub(FeedStorage feedStorage,
+                         @Value("${filmorate.feed.stream.buffer-size:256}") int bufferSize,
+                         @Value("${filmorate.feed.stream.replay-limit:1000}") int replayLimit,
+                         @Value("${filmorate.feed.stream.timeout:PT30M}") Duration timeout,
+                         @Value("${filmorate.feed.stream.dispatcher-threads:4}") int dispatcherThreads) {
+        this.feedStorage = feedStorage;
+        this.bufferSize = bufferSize;
+        this.replayLimit = replayLimit;
+        this.timeoutMillis = timeout.toMillis();
+
+        AtomicInteger threads = new AtomicInteger();
+        this.dispatcher = Executors.newFixedThreadPool(dispatcherThreads, task -> {
+            Thread thread = new Thread(task, "feed-stream-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        subscribers.values().forEach(set -> set.forEach(subscriber -> subscriber.emitter.complete()));
+        subscribers.clear();
+        dispatcher.shutdownNow();
+    }
+
+    public SseEmitter subscribe(int userId, Long lastEventId) {
+        return subscribe(userId, lastEventId, new SseEmitter(timeoutMillis));
+    }
+
+    /**
+     * Streams the events of the user to the emitter. Events stored after {@code lastEventId} are replayed first;
+     * if there are more than {@code replay-limit} of them, a {@code reset} event tells the client to reload the feed.
+     */
+    public SseEmitter subscribe(int userId, Long lastEventId, SseEmitter emitter) {
+        Subscriber subscriber = new Subscriber(userId, emitter, bufferSize);
+        emitter.onCompletion(() -> remove(subscriber));
+        emitter.onTimeout(() -> remove(subscriber));
+        emitter.onError(error -> remove(subscriber));
+        subscribers.computeIfAbsent(userId, id -> ConcurrentHashMap.newKeySet()).add(subscriber);
+
+        try {
+            if (lastEventId != null) {
+                replay(subscriber, lastEventId);
+            }
+        } catch (IOException | IllegalStateException e) {
+            remove(subscriber);
+            return emitter;
+        }
+
+        subscriber.ready = true;
+        schedule(subscriber);
+        log.debug("User {} subscribed to the feed stream after event {}", userId, lastEventId);
+        return emitter;
+    }
+
+    public int getSubscribersCount() {
+        return subscribers.values().stream().mapToInt(Set::size).sum();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onFeed(FeedEvent event) {
+        for (Feed feed : event.getEvents()) {
+            Set<Subscriber> listeners = subscribers.get(feed.getUserId());
+            if (listeners == null) {
+                continue;
+            }
+
+            for (Subscriber subscriber : listeners) {
+                if (!subscriber.buffer.offer(feed)) {
+                    log.info("Feed stream of user {} evicted: {} events are waiting for a slow client",
+                            subscriber.userId, bufferSize);
+                    subscriber.evicted = true;
+                    remove(subscriber);
+                }
+                schedule(subscriber);
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${filmorate.feed.stream.heartbeat-interval:PT15S}")
+    public void heartbeat() {
+        subscribers.values().forEach(set -> set.forEach(subscriber -> {
+            subscriber.heartbeat = true;
+            schedule(subscriber);
+        }));
+    }
+
+    private void replay(Subscriber subscriber, long lastEventId) throws IOException {
+        List<Feed> missed = feedStorage.findByUserIdAfterEventId(subscriber.userId, lastEventId, replayLimit + 1);
+
+        if (missed.size() > replayLimit) {
+            subscriber.emitter.send(SseEmitter.event().name(RESET_EVENT).data(""));
+            subscriber.reloadedUpTo = missed.get(missed.size() - 1).getEventId();
+            return;
+        }
+        for (Feed feed : missed) {
+            send(subscriber, feed);
+            subscriber.replayed.add(feed.getEventId());
+        }
+    }
+
+    private void schedule(Subscriber subscriber) {
+        if (subscriber.ready && subscriber.scheduled.compareAndSet(false, true)) {
+            dispatcher.execute(() -> drain(subscriber));
+        }
+    }
+
+    private void drain(Subscriber subscriber) {
+        try {
+            Feed feed;
+            while (!subscriber.evicted && (feed = subscriber.buffer.poll()) != null) {
+                if (!subscriber.replayed.remove(feed.getEventId()) && feed.getEventId() > subscriber.reloadedUpTo) {
+                    send(subscriber, feed);
+                }
+            }
+
+            if (subscriber.evicted) {
+                subscriber.buffer.clear();
+                subscriber.emitter.complete();
+                return;
+            }
+            if (subscriber.heartbeat) {
+                subscriber.heartbeat = false;
+                subscriber.emitter.send(SseEmitter.event().comment("heartbeat"));
+            }
+        } catch (IOException | IllegalStateException e) {
+            log.debug("Feed stream of user {} closed: {}", subscriber.userId, e.getMessage());
+            subscriber.evicted = true;
+            remove(subscriber);
+        } finally {
+            subscriber.scheduled.set(false);
+        }
+
+        if (!subscriber.evicted && !subscriber.buffer.isEmpty()) {
+            schedule(subscriber);
+        }
+    }
+
+    private void send(Subscriber subscriber, Feed feed) throws IOException {
+        subscriber.emitter.send(SseEmitter.event()
+                .id(String.valueOf(feed.getEventId()))
+                .name(FEED_EVENT)
+                .data(feed, MediaType.APPLICATION_JSON));
+    }
+
+    private void remove(Subscriber subscriber) {
+        subscribers.computeIfPresent(subscriber.userId, (id, set) -> {
+            set.remove(subscriber);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    private static class Subscriber {
+        private final int userId;
+        private final SseEmitter emitter;
+        private final BlockingQueue<Feed> buffer;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile boolean ready;
+        private volatile boolean evicted;
+        private volatile boolean heartbeat;
+        // events committed while the replay was read may also arrive live; at most replay-limit of them
+        private final Set<Long> replayed = ConcurrentHashMap.newKeySet();
+        private volatile long reloadedUpTo;
+
+        private Subscriber(int userId, SseEmitter emitter, int bufferSize) {
+            this.userId = userId;
+            this.emitter = emitter;
+            this.buffer = new ArrayBlockingQueue<>(bufferSize);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Feed;
+import ru.yandex.practicum.filmorate.model.enums.FeedWriteMode;
+import ru.yandex.practicum.filmorate.storage.FeedStorage;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static ru.yandex.practicum.filmorate.model.enums.FeedWriteMode.SYNC;
+
+/**
+ * Write-behind buffer for feed events.
+ * <p>
+ * In {@code async} mode events are put into a bounded lock-free queue and a background thread stores them as batched
+ * inserts every {@code flush-interval} or as soon as {@code batch-size} events are waiting. When the queue is full the
+ * producer writes the oldest batch itself and stores its event right behind it, so a slow database slows writers
+ * down instead of dropping events, and a single producer never writes more than one batch ahead of its own event.
+ * A drain only takes the events that were queued when it started, so steady load cannot keep a reader that flushes
+ * waiting on the writer. A batch the database rejects is retried row by row and only the failing events are
+ * dropped. Whatever is still queued is written on shutdown. In {@code sync} mode every event is inserted by the
+ * caller, inside its transaction if any.
+ */
+@Slf4j
+@Component
+public class FeedWriter {
+
+    private final FeedStorage feedStorage;
+    private final FeedWriteMode mode;
+    private final int capacity;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+
+    private final Queue<Feed> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private volatile boolean running;
+    private Thread writer;
+
+    public FeedWriter(FeedStorage feedStorage,
+                      @Value("${filmorate.feed.write-mode:async}") String mode,
+                      @Value("${filmorate.feed.queue-capacity:10000}") int capacity,
+                      @Value("${filmorate.feed.batch-size:500}") int batchSize,
+                      @Value("${filmorate.feed.flush-interval:5ms}") Duration flushInterval) {
+        this.feedStorage = feedStorage;
+        this.mode = FeedWriteMode.valueOf(mode.toUpperCase());
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = flushInterval.toNanos();
+    }
+
+    @PostConstruct
+    public void start() {
+        if (mode == SYNC) {
+            log.info("Feed events are written synchronously");
+            return;
+        }
+
+        running = true;
+        writer = new Thread(this::run, "feed-writer");
+        writer.setDaemon(true);
+        writer.start();
+        log.info("Feed events are written behind in batches of {} every {} ms, queue capacity {}",
+                batchSize, TimeUnit.NANOSECONDS.toMillis(flushIntervalNanos), capacity);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (writer == null) {
+            return;
+        }
+
+        running = false;
+        LockSupport.unpark(writer);
+        writer.join(TimeUnit.NANOSECONDS.toMillis(flushIntervalNanos) + 1000);
+        log.info("Feed writer stopped, {} queued events written on shutdown", flush());
+    }
+
+    public void write(Feed feed) {
+        if (mode == SYNC) {
+            feedStorage.addFeed(feed.getEntityId(), feed.getUserId(), feed.getTimestamp(),
+                    feed.getEventType(), feed.getOperation());
+            return;
+        }
+
+        if (!reserve()) {
+            flushLock.lock();
+            try {
+                drain(batchSize);
+                log.debug("Feed queue is full, writing event of user {} behind the oldest batch", feed.getUserId());
+                insert(List.of(feed));
+            } finally {
+                flushLock.unlock();
+            }
+            return;
+        }
+
+        queue.offer(feed);
+        if (size.get() >= batchSize) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    /**
+     * Writes the events queued so far and returns their number; events queued meanwhile are left to the next flush.
+     * Called before feed reads so a user always sees their own latest actions; waits for a batch the background
+     * thread is writing, since the queue size is only released once a batch is stored.
+     */
+    public int flush() {
+        if (size.get() == 0) {
+            return 0;
+        }
+
+        flushLock.lock();
+        try {
+            return drain(size.get());
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private int drain(int limit) {
+        int written = 0;
+        List<Feed> batch = new ArrayList<>(Math.min(limit, batchSize));
+        Feed feed;
+
+        for (int taken = 0; taken < limit && (feed = queue.poll()) != null; taken++) {
+            batch.add(feed);
+            if (batch.size() == batchSize) {
+                written += store(batch);
+            }
+        }
+        return written + store(batch);
+    }
+
+    private void run() {
+        while (running) {
+            LockSupport.parkNanos(this, flushIntervalNanos);
+            flush();
+        }
+    }
+
+    private boolean reserve() {
+        int current;
+        do {
+            current = size.get();
+            if (current >= capacity) {
+                return false;
+            }
+        } while (!size.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    private int store(List<Feed> batch) {
+        int count = batch.size();
+        if (count == 0) {
+            return 0;
+        }
+
+        try {
+            return insert(batch);
+        } finally {
+            size.addAndGet(-count);
+            batch.clear();
+        }
+    }
+
+    private int insert(List<Feed> events) {
+        try {
+            feedStorage.addFeeds(events);
+            return events.size();
+        } catch (RuntimeException e) {
+            if (events.size() == 1) {
+                log.error("Dropped feed event that could not be written: {}", events.get(0), e);
+                return 0;
+            }
+            log.warn("Batch of {} feed events could not be written, writing them one by one: {}",
+                    events.size(), e.getMessage());
+        }
+
+        int written = 0;
+        for (Feed event : events) {
+            written += insert(List.of(event));
+        }
+        return written;
+    }
+}
@@ -1,20 +1,42 @@
 package ru.yandex.practicum.filmorate.service;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exception.BadRequestException;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.CacheStats;
+import ru.yandex.practicum.filmorate.model.Director;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmBatchResult;
+import ru.yandex.practicum.filmorate.model.FilmBrowseResult;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Page;
+import ru.yandex.practicum.filmorate.model.SuggestStats;
+import ru.yandex.practicum.filmorate.model.Suggestion;
+import ru.yandex.practicum.filmorate.model.dto.FilmFilter;
+import ru.yandex.practicum.filmorate.model.enums.ExportFormat;
 import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.cache.FilmCache;
 import ru.yandex.practicum.filmorate.storage.dao.LikesDao;
+import ru.yandex.practicum.filmorate.storage.index.FilmAttributeIndex;
+import ru.yandex.practicum.filmorate.storage.index.PopularityIndex;
+import ru.yandex.practicum.filmorate.storage.index.SuggestIndex;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.time.LocalDate;
 import java.time.Month;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 
 import static java.lang.String.format;
+import static ru.yandex.practicum.filmorate.model.enums.ExportFormat.JSON;
 import static ru.yandex.practicum.filmorate.model.enums.EventType.LIKE;
 import static ru.yandex.practicum.filmorate.model.enums.Operation.ADD;
 import static ru.yandex.practicum.filmorate.model.enums.Operation.REMOVE;
@@ -24,18 +46,71 @@ import static ru.yandex.practicum.filmorate.model.enums.Operation.REMOVE;
 @RequiredArgsConstructor
 public class FilmService {
 
+    private static final int EXPORT_CHUNK_SIZE = 1000;
+    private static final int MAX_BATCH_SIZE = 50_000;
+
     private final LocalDate firstFilmBirthday = LocalDate.of(1895, Month.DECEMBER, 28);
     private final FilmStorage filmStorage;
     private final LikesDao likesDao;
     private final FeedService feedService;
     private final DirectorService directorService;
-    private final UserService userService;
     private final GenreService genreService;
+    private final MpaService mpaService;
+    private final UserService userService;
+    private final FilmCache filmCache;
+    private final SuggestIndex suggestIndex;
+    private final FilmAttributeIndex filmAttributeIndex;
+    private final PopularityIndex popularityIndex;
+    private final ObjectMapper objectMapper;
 
     public List<Film> findAll() {
-        List<Film> films = filmStorage.findAll();
+        return filmStorage.findAll();
+    }
+
+    public Page<Film> findPage(String after, Integer limit) {
+        long[] keys = Cursor.decode(after, 1);
+        int size = Cursor.limit(limit);
+
+        List<Film> films = filmStorage.findPage(keys == null ? 0 : (int) keys[0], size + 1);
+        return Cursor.page(films, size, film -> Cursor.encode(film.getId()));
+    }
 
-        return genreService.saveGenresForFilms(films);
+    public ExportFormat getExportFormat(String format) {
+        try {
+            return ExportFormat.valueOf(format.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException(format("Incorrect parameters value: %s", format));
+        }
+    }
+
+    /**
+     * Writes the whole catalog to the stream as NDJSON or a JSON array, one hydrated chunk at a time.
+     */
+    public void export(ExportFormat format, OutputStream out) throws IOException {
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.setRootValueSeparator(null);
+            if (format == JSON) {
+                generator.writeStartArray();
+            }
+
+            filmStorage.forEachChunk(EXPORT_CHUNK_SIZE, films -> {
+                try {
+                    for (Film film : films) {
+                        generator.writeObject(film);
+                        if (format != JSON) {
+                            generator.writeRaw('\n');
+                        }
+                    }
+                    generator.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+
+            if (format == JSON) {
+                generator.writeEndArray();
+            }
+        }
     }
 
     public Film create(Film film) {
@@ -43,6 +118,40 @@ public class FilmService {
         return filmStorage.create(film);
     }
 
+    /**
+     * Validates every film up front and creates the valid ones in batches; invalid films are reported
+     * with their error and do not stop the rest of the payload.
+     */
+    public List<FilmBatchResult> createAll(List<Film> films) {
+        if (films.isEmpty() || films.size() > MAX_BATCH_SIZE) {
+            throw new BadRequestException(format("Batch size must be between 1 and %d", MAX_BATCH_SIZE));
+        }
+
+        FilmBatchResult[] results = new FilmBatchResult[films.size()];
+        List<Film> valid = new ArrayList<>();
+        List<Integer> validIndexes = new ArrayList<>();
+
+        for (int i = 0; i < films.size(); i++) {
+            Film film = films.get(i);
+            try {
+                throwIfFilmNotValid(film);
+                throwIfReferencesNotFound(film);
+                valid.add(film);
+                validIndexes.add(i);
+            } catch (BadRequestException | NotFoundException e) {
+                results[i] = FilmBatchResult.builder().index(i).error(e.getMessage()).build();
+            }
+        }
+
+        filmStorage.createAll(valid);
+
+        for (int j = 0; j < valid.size(); j++) {
+            int index = validIndexes.get(j);
+            results[index] = FilmBatchResult.builder().index(index).id(valid.get(j).getId()).build();
+        }
+        return Arrays.asList(results);
+    }
+
     public Film update(Film film) {
         getById(film.getId());
         throwIfFilmNotValid(film);
@@ -57,22 +166,35 @@ public class FilmService {
 
     public void addLike(Integer id, Integer userId) {
         userService.checkUserExist(userId);
-        likesDao.addLike(id, userId);
-
-        feedService.add(id, userId, LIKE, ADD);
+        if (likesDao.addLike(id, userId)) {
+            feedService.add(id, userId, LIKE, ADD);
+        }
     }
 
     public void removeLike(Integer id, Integer userId) {
         userService.checkUserExist(userId);
-        likesDao.removeLike(id, userId);
-
-        feedService.add(id, userId, LIKE, REMOVE);
+        if (likesDao.removeLike(id, userId)) {
+            feedService.add(id, userId, LIKE, REMOVE);
+        }
     }
 
     public List<Film> getPopular(Integer count, Optional<Integer> genreId, Optional<Integer> year) {
+        if (count <= 0) {
+            throw new BadRequestException(format("Incorrect parameters value: %s", count));
+        }
+
         return likesDao.getPopular(count, genreId, year);
     }
 
+    public List<Film> getSimilar(Integer id, Integer count) {
+        getById(id);
+        if (count <= 0) {
+            throw new BadRequestException(format("Incorrect parameters value: %s", count));
+        }
+
+        return likesDao.getSimilar(id, count);
+    }
+
     public List<Film> getByDirectorId(Integer directorId, String sortParam) {
         List<Film> films;
 
@@ -87,6 +209,31 @@ public class FilmService {
         return films;
     }
 
+    public FilmBrowseResult browse(FilmFilter filter, String sort, Integer count) {
+        if (count <= 0) {
+            throw new BadRequestException(format("Incorrect parameters value: %s", count));
+        }
+
+        FilmAttributeIndex.Selection selection = filmAttributeIndex.select(filter);
+        List<Integer> ids;
+        switch (sort) {
+            case "likes":
+                ids = popularityIndex.getTop(count, selection.getFilms());
+                break;
+            case "year":
+                ids = filmAttributeIndex.sortByRelease(selection.getFilms(), count);
+                break;
+            default:
+                throw new BadRequestException(format("Incorrect parameters value: %s", sort));
+        }
+
+        return FilmBrowseResult.builder()
+                .films(filmStorage.findByIds(ids))
+                .total(selection.getFilms().getCardinality())
+                .facets(selection.getFacets())
+                .build();
+    }
+
     public List<Film> search(String query, String groupBy) {
         switch (groupBy) {
             case "title":
@@ -101,6 +248,18 @@ public class FilmService {
         }
     }
 
+    public List<Suggestion> suggest(String prefix, Integer limit) {
+        if (limit <= 0 || limit > suggestIndex.getTopSize()) {
+            throw new BadRequestException(format("Incorrect parameters value: %s", limit));
+        }
+
+        return suggestIndex.suggest(prefix, limit);
+    }
+
+    public SuggestStats getSuggestStats() {
+        return suggestIndex.stats();
+    }
+
     public void deleteById(Integer id) {
         getById(id);
         filmStorage.deleteById(id);
@@ -112,12 +271,30 @@ public class FilmService {
         return filmStorage.getCommonFilms(userId, friendId);
     }
 
+    public CacheStats getCacheStats() {
+        return filmCache.stats();
+    }
+
+    private void throwIfReferencesNotFound(Film film) {
+        if (film.getMpa() == null) {
+            throw new BadRequestException("Рейтинг MPA фильма не указан");
+        }
+        mpaService.getById(film.getMpa().getId());
+
+        if (film.getGenres() != null) {
+            film.getGenres().stream().map(Genre::getId).forEach(genreService::getById);
+        }
+        if (film.getDirectors() != null) {
+            film.getDirectors().stream().map(Director::getId).forEach(directorService::getById);
+        }
+    }
+
     private void throwIfFilmNotValid(Film film) {
         if (film.getName() == null || film.getName().isEmpty() || film.getName().isBlank()) {
             throw new BadRequestException("Название фильма не может быть пустым");
-        } else if (film.getDescription().length() > 200) {
+        } else if (film.getDescription() != null && film.getDescription().length() > 200) {
             throw new BadRequestException("Описание фильма превышает максимальное количество знаков 200");
-        } else if (film.getReleaseDate().isBefore(firstFilmBirthday)) {
+        } else if (film.getReleaseDate() == null || film.getReleaseDate().isBefore(firstFilmBirthday)) {
             throw new BadRequestException("Дата релиза фильма введена неверна");
         } else if (film.getDuration() <= 0) {
             throw new BadRequestException("Продолжительность фильма не может быть отрицательной");
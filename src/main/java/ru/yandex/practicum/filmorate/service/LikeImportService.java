@@ -0,0 +1,132 @@
+package ru.yandex.practicum.filmorate.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.exception.BadRequestException;
+import ru.yandex.practicum.filmorate.model.Feed;
+import ru.yandex.practicum.filmorate.model.LikeImportResult;
+import ru.yandex.practicum.filmorate.model.dto.LikeImportRecord;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.storage.dao.LikesDao;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.lang.String.format;
+import static java.util.stream.Collectors.toList;
+import static ru.yandex.practicum.filmorate.model.enums.EventType.LIKE;
+import static ru.yandex.practicum.filmorate.model.enums.Operation.ADD;
+
+/**
+ * Imports likes from an NDJSON stream of {@code {"filmId": .., "userId": ..}} records.
+ * <p>
+ * Film and user ids are checked against id sets loaded once per import. Valid records are written in chunks,
+ * each chunk with its feed events in its own transaction; the import is idempotent, so an interrupted one can simply
+ * be re-run.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LikeImportService {
+
+    private static final int CHUNK_SIZE = 10_000;
+    private static final int MAX_REPORTED_ERRORS = 100;
+
+    private final ObjectMapper objectMapper;
+    private final FilmStorage filmStorage;
+    private final UserStorage userStorage;
+    private final LikesDao likesDao;
+    private final FeedService feedService;
+    private final TransactionTemplate transactionTemplate;
+
+    public LikeImportResult importLikes(InputStream in) throws IOException {
+        RoaringBitmap films = filmStorage.findAllIds();
+        RoaringBitmap users = userStorage.findAllIds();
+
+        long read = 0;
+        long imported = 0;
+        long rejected = 0;
+        List<String> errors = new ArrayList<>();
+        List<LikeImportRecord> chunk = new ArrayList<>(CHUNK_SIZE);
+
+        try (MappingIterator<LikeImportRecord> records = objectMapper.readerFor(LikeImportRecord.class).readValues(in)) {
+            while (records.hasNextValue()) {
+                LikeImportRecord record = records.nextValue();
+                read++;
+
+                String error = validate(record, films, users);
+                if (error != null) {
+                    rejected++;
+                    if (errors.size() < MAX_REPORTED_ERRORS) {
+                        errors.add(format("Line %d: %s", read, error));
+                    }
+                    continue;
+                }
+
+                chunk.add(record);
+                if (chunk.size() == CHUNK_SIZE) {
+                    imported += flush(chunk);
+                    chunk.clear();
+                }
+            }
+        } catch (JsonProcessingException e) {
+            flush(chunk);
+            throw new BadRequestException(format("Malformed like record at line %d: %s",
+                    read + 1, e.getOriginalMessage()));
+        }
+        imported += flush(chunk);
+
+        log.info("Like import finished: {} read, {} imported, {} rejected", read, imported, rejected);
+        return LikeImportResult.builder()
+                .read(read)
+                .imported(imported)
+                .duplicates(read - imported - rejected)
+                .rejected(rejected)
+                .errors(errors)
+                .build();
+    }
+
+    private int flush(List<LikeImportRecord> chunk) {
+        if (chunk.isEmpty()) {
+            return 0;
+        }
+
+        Integer imported = transactionTemplate.execute(status -> {
+            List<LikeImportRecord> added = likesDao.importLikes(chunk);
+            long timestamp = Instant.now().toEpochMilli();
+
+            feedService.addAll(added.stream()
+                    .map(like -> Feed.builder()
+                            .entityId(like.getFilmId())
+                            .userId(like.getUserId())
+                            .timestamp(timestamp)
+                            .eventType(LIKE)
+                            .operation(ADD)
+                            .build())
+                    .collect(toList()));
+            return added.size();
+        });
+        return imported == null ? 0 : imported;
+    }
+
+    private static String validate(LikeImportRecord record, RoaringBitmap films, RoaringBitmap users) {
+        if (record.getFilmId() == null || record.getUserId() == null) {
+            return "filmId and userId are required";
+        } else if (!films.contains(record.getFilmId())) {
+            return format("Film with id: %d not found", record.getFilmId());
+        } else if (!users.contains(record.getUserId())) {
+            return format("User with id: %d not found", record.getUserId());
+        }
+        return null;
+    }
+}
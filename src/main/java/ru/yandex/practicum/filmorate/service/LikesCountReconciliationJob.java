@@ -0,0 +1,31 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.storage.dao.LikesDao;
+import ru.yandex.practicum.filmorate.storage.index.PopularityIndex;
+
+/**
+ * Periodically repairs drift between {@code films.likes_count} and {@code likes_by_users}.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LikesCountReconciliationJob {
+
+    private final LikesDao likesDao;
+    private final PopularityIndex popularityIndex;
+
+    @Scheduled(fixedDelayString = "${filmorate.likes.reconcile-interval:PT1H}",
+            initialDelayString = "${filmorate.likes.reconcile-interval:PT1H}")
+    public void reconcile() {
+        int repaired = likesDao.reconcileLikesCount();
+
+        if (repaired > 0) {
+            log.warn("Likes count repaired for {} films", repaired);
+            popularityIndex.rebuild();
+        }
+    }
+}
@@ -4,7 +4,7 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Mpa;
-import ru.yandex.practicum.filmorate.storage.dao.MpaDao;
+import ru.yandex.practicum.filmorate.storage.cache.ReferenceDataRegistry;
 
 import java.util.List;
 
@@ -12,14 +12,14 @@ import java.util.List;
 @RequiredArgsConstructor
 public class MpaService {
 
-    private final MpaDao mpaDao;
+    private final ReferenceDataRegistry referenceDataRegistry;
 
     public List<Mpa> findAll() {
-        return mpaDao.findAll();
+        return referenceDataRegistry.findAllMpa();
     }
 
     public Mpa getById(int idMPA) {
-        return mpaDao.findMpaById(idMPA)
+        return referenceDataRegistry.findMpaById(idMPA)
                 .orElseThrow(() -> new NotFoundException(String.format("MPA with id: %d not found", idMPA)));
     }
 }
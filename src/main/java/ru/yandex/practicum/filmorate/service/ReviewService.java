@@ -3,12 +3,23 @@ package ru.yandex.practicum.filmorate.service;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.exception.BadRequestException;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.Page;
 import ru.yandex.practicum.filmorate.model.Review;
 import ru.yandex.practicum.filmorate.model.enums.Operation;
+import ru.yandex.practicum.filmorate.storage.cache.ReviewTopCache;
+import ru.yandex.practicum.filmorate.storage.cache.ReviewUsefulCounters;
 import ru.yandex.practicum.filmorate.storage.dao.ReviewDao;
+import ru.yandex.practicum.filmorate.storage.index.ReviewSearchIndex;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static ru.yandex.practicum.filmorate.model.enums.EventType.REVIEW;
 import static ru.yandex.practicum.filmorate.model.enums.Operation.REMOVE;
@@ -18,17 +29,58 @@ import static ru.yandex.practicum.filmorate.model.enums.Operation.UPDATE;
 @Slf4j
 @RequiredArgsConstructor
 public class ReviewService {
+    private static final int MAX_SEARCH_RESULTS = 100;
+
     private final ReviewDao reviewDao;
     private final FeedService feedService;
+    private final ReviewUsefulCounters reviewUsefulCounters;
+    private final ReviewTopCache reviewTopCache;
+    private final ReviewSearchIndex reviewSearchIndex;
 
     public List<Review> findAll(Integer filmId, Integer count) {
-        return reviewDao.findAll(filmId, count);
+        if (filmId != null && count <= reviewTopCache.getTopSize()) {
+            return reviewTopCache.getTop(filmId, count, size -> reviewDao.findAll(filmId, size));
+        }
+        return reviewUsefulCounters.read(() -> withPendingUseful(reviewDao.findAll(filmId, count)));
+    }
+
+    public Page<Review> findPage(Integer filmId, String after, Integer limit) {
+        long[] keys = Cursor.decode(after, 2);
+        int size = Cursor.limit(limit);
+
+        return reviewUsefulCounters.read(() -> {
+            List<Review> reviews = keys == null
+                    ? reviewDao.findPage(filmId, null, null, size + 1)
+                    : reviewDao.findPage(filmId, (int) keys[0], (int) keys[1], size + 1);
+            // the cursor points into the stored order, so it is taken before pending changes are added
+            Page<Review> page = Cursor.page(reviews, size,
+                    review -> Cursor.encode(review.getUseful(), review.getReviewId()));
+            withPendingUseful(page.getItems());
+            return page;
+        });
+    }
+
+    public List<Review> search(String query, Integer filmId, Integer count) {
+        if (count <= 0 || count > MAX_SEARCH_RESULTS) {
+            throw new BadRequestException(String.format("Incorrect parameters value: %s", count));
+        }
+
+        int[] ids = reviewSearchIndex.search(query, filmId, count);
+        Map<Integer, Review> reviews = reviewUsefulCounters.read(() -> withPendingUseful(reviewDao.findByIds(ids)))
+                .stream()
+                .collect(Collectors.toMap(Review::getReviewId, Function.identity()));
+        return Arrays.stream(ids)
+                .mapToObj(reviews::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
     }
 
     public Review add(Review review) {
         throwIfReviewNotValid(review);
 
         Review rw = reviewDao.add(review);
+        reviewTopCache.added(rw);
+        reviewSearchIndex.add(rw);
         feedService.add(rw.getReviewId(), rw.getUserId(), REVIEW, Operation.ADD);
         return rw;
     }
@@ -40,7 +92,10 @@ public class ReviewService {
                 .orElseThrow(() -> new NotFoundException("Отзыв не найден"));
 
         feedService.add(rw.getReviewId(), rw.getUserId(), REVIEW, UPDATE);
-        return reviewDao.update(review);
+        Review updated = reviewDao.update(review);
+        reviewTopCache.updated(updated);
+        reviewSearchIndex.update(updated.getReviewId(), updated.getContent());
+        return updated;
     }
 
     public void delete(Integer id) {
@@ -48,33 +103,63 @@ public class ReviewService {
                 .orElseThrow(() -> new NotFoundException("Отзыв не найден"));
 
         reviewDao.delete(id);
+        reviewTopCache.removed(id);
+        reviewSearchIndex.delete(id);
+        reviewUsefulCounters.discard(id);
 
         feedService.add(rw.getReviewId(), rw.getUserId(), REVIEW, REMOVE);
     }
 
     public void addLikeReview(Integer reviewId, Integer userId) {
-        reviewDao.addLike(reviewId, userId);
+        int delta = reviewDao.addLike(reviewId, userId);
+        recordDelta(reviewId, delta);
     }
 
     public void addDislike(Integer reviewId, Integer userId) {
-        reviewDao.addDislike(reviewId, userId);
+        int delta = reviewDao.addDislike(reviewId, userId);
+        recordDelta(reviewId, delta);
     }
 
     public void deleteLike(Integer reviewId, Integer userId) {
-        reviewDao.deleteLike(reviewId, userId);
+        int delta = reviewDao.deleteLike(reviewId, userId);
+        recordDelta(reviewId, delta);
     }
 
     public void deleteDislike(Integer reviewId, Integer userId) {
-        reviewDao.deleteDislike(reviewId, userId);
+        int delta = reviewDao.deleteDislike(reviewId, userId);
+        recordDelta(reviewId, delta);
     }
 
     public Review findById(Integer id) {
         log.info("Получение отзыва с id {}", id);
 
-        return reviewDao.findById(id)
+        return findWithPendingUseful(id)
                 .orElseThrow(() -> new NotFoundException("Отзыв не найден"));
     }
 
+    private void recordDelta(int reviewId, int delta) {
+        if (delta == 0) {
+            return;
+        }
+        reviewUsefulCounters.add(reviewId, delta);
+        reviewTopCache.recordDelta(reviewId, delta, () -> reviewDao.findById(reviewId));
+        reviewSearchIndex.addUseful(reviewId, delta);
+    }
+
+    private Optional<Review> findWithPendingUseful(Integer id) {
+        return reviewUsefulCounters.read(() -> reviewDao.findById(id).map(this::withPendingUseful));
+    }
+
+    private List<Review> withPendingUseful(List<Review> reviews) {
+        reviews.forEach(this::withPendingUseful);
+        return reviews;
+    }
+
+    private Review withPendingUseful(Review review) {
+        review.setUseful(review.getUseful() + reviewUsefulCounters.get(review.getReviewId()));
+        return review;
+    }
+
     public void throwIfReviewNotValid(Review review) {
         if (review.getFilmId() < 0 || review.getFilmId() == null) {
             log.warn("Попытка добавить отзыв к несуществующему фильму");
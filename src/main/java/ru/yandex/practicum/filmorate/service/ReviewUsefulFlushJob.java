@@ -0,0 +1,35 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.storage.cache.ReviewUsefulCounters;
+import ru.yandex.practicum.filmorate.storage.dao.ReviewDao;
+
+import javax.annotation.PreDestroy;
+
+/**
+ * Periodically writes the pending review usefulness changes to {@code reviews.useful} in one batch.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ReviewUsefulFlushJob {
+
+    private final ReviewUsefulCounters reviewUsefulCounters;
+    private final ReviewDao reviewDao;
+    private final TransactionTemplate transactionTemplate;
+
+    @PreDestroy
+    @Scheduled(fixedDelayString = "${filmorate.reviews.useful-flush-interval:PT1S}")
+    public void flush() {
+        Integer flushed = transactionTemplate.execute(status ->
+                reviewUsefulCounters.flush(reviewDao::applyUsefulDeltas));
+
+        if (flushed != null && flushed > 0) {
+            log.debug("Usefulness of {} reviews flushed", flushed);
+        }
+    }
+}
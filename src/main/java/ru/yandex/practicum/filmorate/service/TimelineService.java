@@ -0,0 +1,312 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.yandex.practicum.filmorate.model.Feed;
+import ru.yandex.practicum.filmorate.model.Page;
+import ru.yandex.practicum.filmorate.storage.FeedStorage;
+import ru.yandex.practicum.filmorate.storage.dao.FriendsDao;
+import ru.yandex.practicum.filmorate.storage.event.FeedEvent;
+import ru.yandex.practicum.filmorate.storage.event.FriendEvent;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Timeline of what the friends of a user did, newest first.
+ * <p>
+ * A page is assembled by a k-way heap merge of per-friend cursors, each reading one friend's events newest first
+ * through the {@code (id_user, timestamp, id_event)} index. Friends are opened in order of their last activity and
+ * only while it is not older than the best event waiting in the heap, so friends who cannot make it onto the page
+ * are never queried.
+ * <p>
+ * Timelines of users who read them recently are also kept in memory and updated on write: stored events of a user
+ * are pushed into the cached timelines of everyone following them, so active users get their first pages without
+ * a database round trip.
+ */
+@Slf4j
+@Service
+public class TimelineService {
+
+    private static final Comparator<Feed> NEWEST_FIRST = Comparator.comparingLong(Feed::getTimestamp)
+            .thenComparingLong(Feed::getEventId)
+            .reversed();
+
+    private final FeedStorage feedStorage;
+    private final FeedWriter feedWriter;
+    private final FriendsDao friendsDao;
+    private final int cacheSize;
+    private final long latencyBudgetNanos;
+
+    private final Map<Integer, Long> lastActivity = new ConcurrentHashMap<>();
+    private final Map<Integer, Timeline> timelines;
+    private final Map<Integer, Set<Timeline>> followers = new HashMap<>();
+
+    public TimelineService(FeedStorage feedStorage,
+                           FeedWriter feedWriter,
+                           FriendsDao friendsDao,
+                           @Value("${filmorate.timeline.cache.users:1000}") int cachedUsers,
+                           @Value("${filmorate.timeline.cache.size:200}") int cacheSize,
+                           @Value("${filmorate.timeline.latency-budget:50ms}") Duration latencyBudget) {
+        this.feedStorage = feedStorage;
+        this.feedWriter = feedWriter;
+        this.friendsDao = friendsDao;
+        this.cacheSize = cacheSize;
+        this.latencyBudgetNanos = latencyBudget.toNanos();
+        this.timelines = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Timeline> eldest) {
+                if (size() > cachedUsers) {
+                    unfollow(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    @PostConstruct
+    public synchronized void rebuild() {
+        timelines.clear();
+        followers.clear();
+        lastActivity.clear();
+        lastActivity.putAll(feedStorage.findLastActivity());
+        log.info("Timeline engine loaded last activity of {} users", lastActivity.size());
+    }
+
+    public Page<Feed> getPage(int userId, String before, Integer limit) {
+        long[] keys = Cursor.decode(before, 2);
+        int size = Cursor.limit(limit);
+        long start = System.nanoTime();
+
+        try {
+            feedWriter.flush();
+
+            List<Feed> rows = fromCache(userId, keys, size + 1);
+            if (rows == null) {
+                rows = keys == null
+                        ? load(userId, size + 1)
+                        : merge(friendsOf(userId), keys[0], keys[1], size + 1);
+            }
+            return Cursor.page(rows, size, feed -> Cursor.encode(feed.getTimestamp(), feed.getEventId()));
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            if (elapsed > latencyBudgetNanos) {
+                log.warn("Friends timeline of user {} took {} ms", userId, elapsed / 1_000_000);
+            } else {
+                log.debug("Friends timeline of user {} took {} us", userId, elapsed / 1_000);
+            }
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onFeed(FeedEvent event) {
+        event.getEvents().forEach(feed -> lastActivity.merge(feed.getUserId(), feed.getTimestamp(), Math::max));
+
+        synchronized (this) {
+            for (Feed feed : event.getEvents()) {
+                Set<Timeline> readers = followers.get(feed.getUserId());
+                if (readers != null) {
+                    readers.forEach(timeline -> timeline.offer(feed, cacheSize));
+                }
+            }
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onFriend(FriendEvent event) {
+        Timeline timeline = timelines.remove(event.getUserId());
+        if (timeline != null) {
+            unfollow(timeline);
+        }
+    }
+
+    /**
+     * Returns {@code count} events following the cursor from the cached timeline, or {@code null} when the user has
+     * no cached timeline or it does not reach that far.
+     */
+    private synchronized List<Feed> fromCache(int userId, long[] keys, int count) {
+        Timeline timeline = timelines.get(userId);
+        if (timeline == null || timeline.loading) {
+            return null;
+        }
+
+        List<Feed> events = timeline.events;
+        int from = 0;
+        if (keys != null) {
+            int found = Collections.binarySearch(events,
+                    Feed.builder().timestamp(keys[0]).eventId(keys[1]).build(), NEWEST_FIRST);
+            from = found >= 0 ? found + 1 : -found - 1;
+        }
+
+        if (!timeline.complete && from + count > events.size()) {
+            return null;
+        }
+        return new ArrayList<>(events.subList(from, Math.min(from + count, events.size())));
+    }
+
+    /**
+     * Merges the first page and caches the head of the timeline. The timeline follows the friends before the merge
+     * starts, so events stored while it runs are not lost.
+     */
+    private List<Feed> load(int userId, int count) {
+        int[] friends = friendsOf(userId);
+        Timeline timeline = new Timeline(friends);
+        synchronized (this) {
+            Timeline previous = timelines.put(userId, timeline);
+            if (previous != null) {
+                unfollow(previous);
+            }
+            for (int friend : friends) {
+                followers.computeIfAbsent(friend, id -> new HashSet<>()).add(timeline);
+            }
+        }
+
+        int fetch = Math.max(count, cacheSize + 1);
+        List<Feed> merged = merge(friends, null, null, fetch);
+        synchronized (this) {
+            if (timelines.get(userId) == timeline) {
+                timeline.fill(merged, merged.size() < fetch, cacheSize);
+            }
+        }
+        return merged.subList(0, Math.min(count, merged.size()));
+    }
+
+    private List<Feed> merge(int[] friends, Long beforeTimestamp, Long beforeEventId, int count) {
+        Integer[] active = Arrays.stream(friends)
+                .filter(lastActivity::containsKey)
+                .boxed()
+                .sorted(Comparator.comparing((Integer id) -> lastActivity.getOrDefault(id, Long.MIN_VALUE))
+                        .reversed())
+                .toArray(Integer[]::new);
+
+        PriorityQueue<FriendCursor> heap = new PriorityQueue<>(Comparator.comparing(FriendCursor::head, NEWEST_FIRST));
+        List<Feed> events = new ArrayList<>(count);
+        int next = 0;
+
+        while (events.size() < count) {
+            while (next < active.length && (heap.isEmpty()
+                    || lastActivity.getOrDefault(active[next], Long.MIN_VALUE) >= heap.peek().head().getTimestamp())) {
+                FriendCursor cursor = new FriendCursor(active[next++], beforeTimestamp, beforeEventId, count);
+                if (cursor.advance()) {
+                    heap.add(cursor);
+                }
+            }
+
+            FriendCursor top = heap.poll();
+            if (top == null) {
+                break;
+            }
+            events.add(top.head());
+            if (top.advance()) {
+                heap.add(top);
+            }
+        }
+        return events;
+    }
+
+    private int[] friendsOf(int userId) {
+        return friendsDao.findFriendIds(userId);
+    }
+
+    private void unfollow(Timeline timeline) {
+        for (int friend : timeline.friends) {
+            Set<Timeline> readers = followers.get(friend);
+            if (readers != null) {
+                readers.remove(timeline);
+                if (readers.isEmpty()) {
+                    followers.remove(friend);
+                }
+            }
+        }
+    }
+
+    /**
+     * Events of one friend, newest first, read page by page.
+     */
+    private class FriendCursor {
+        private final int userId;
+        private final int pageSize;
+        private Long beforeTimestamp;
+        private Long beforeEventId;
+        private List<Feed> buffer = List.of();
+        private int position = -1;
+        private boolean more = true;
+
+        private FriendCursor(int userId, Long beforeTimestamp, Long beforeEventId, int pageSize) {
+            this.userId = userId;
+            this.beforeTimestamp = beforeTimestamp;
+            this.beforeEventId = beforeEventId;
+            this.pageSize = pageSize;
+        }
+
+        private Feed head() {
+            return buffer.get(position);
+        }
+
+        private boolean advance() {
+            if (++position < buffer.size()) {
+                return true;
+            }
+            if (!more) {
+                return false;
+            }
+
+            buffer = feedStorage.findPageBeforeByUserId(userId, beforeTimestamp, beforeEventId, pageSize);
+            more = buffer.size() == pageSize;
+            position = 0;
+            if (buffer.isEmpty()) {
+                return false;
+            }
+
+            Feed last = buffer.get(buffer.size() - 1);
+            beforeTimestamp = last.getTimestamp();
+            beforeEventId = last.getEventId();
+            return true;
+        }
+    }
+
+    /**
+     * Cached head of a timeline, newest first. Guarded by the service monitor.
+     */
+    private static class Timeline {
+        private final int[] friends;
+        private List<Feed> events = new ArrayList<>();
+        private boolean loading = true;
+        private boolean complete;
+
+        private Timeline(int[] friends) {
+            this.friends = friends;
+        }
+
+        private void offer(Feed feed, int capacity) {
+            int position = 0;
+            while (position < events.size() && NEWEST_FIRST.compare(events.get(position), feed) < 0) {
+                position++;
+            }
+            events.add(position, feed);
+
+            if (!loading && events.size() > capacity) {
+                events.remove(events.size() - 1);
+                complete = false;
+            }
+        }
+
+        private void fill(List<Feed> loaded, boolean exhausted, int capacity) {
+            TreeSet<Feed> all = new TreeSet<>(NEWEST_FIRST);
+            all.addAll(loaded);
+            all.addAll(events);
+
+            events = new ArrayList<>(all);
+            if (events.size() > capacity) {
+                events = new ArrayList<>(events.subList(0, capacity));
+            }
+            complete = exhausted && all.size() <= capacity;
+            loading = false;
+        }
+    }
+}
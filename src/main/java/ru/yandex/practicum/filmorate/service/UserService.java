@@ -3,17 +3,26 @@ package ru.yandex.practicum.filmorate.service;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import ru.yandex.practicum.filmorate.exception.BadRequestException;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Feed;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FriendGraphStats;
+import ru.yandex.practicum.filmorate.model.Page;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
 import ru.yandex.practicum.filmorate.storage.dao.FriendsDao;
 import ru.yandex.practicum.filmorate.storage.dao.LikesDao;
+import ru.yandex.practicum.filmorate.storage.index.FriendGraph;
 
 import java.time.LocalDate;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static ru.yandex.practicum.filmorate.model.enums.EventType.FRIEND;
 import static ru.yandex.practicum.filmorate.model.enums.Operation.ADD;
@@ -23,15 +32,28 @@ import static ru.yandex.practicum.filmorate.model.enums.Operation.REMOVE;
 @Service
 @RequiredArgsConstructor
 public class UserService {
+    private static final int MAX_SUGGESTIONS = 100;
+
     private final UserStorage userStorage;
     private final FriendsDao friendsDao;
     private final FeedService feedService;
+    private final TimelineService timelineService;
+    private final FeedStreamHub feedStreamHub;
+    private final FriendGraph friendGraph;
     private final LikesDao likesDao;
 
     public List<User> findAll() {
         return userStorage.findAll();
     }
 
+    public Page<User> findPage(String after, Integer limit) {
+        long[] keys = Cursor.decode(after, 1);
+        int size = Cursor.limit(limit);
+
+        List<User> users = userStorage.findPage(keys == null ? 0 : (int) keys[0], size + 1);
+        return Cursor.page(users, size, user -> Cursor.encode(user.getId()));
+    }
+
     public User create(User user) {
         throwIfUserNotValid(user);
         setLoginIfNameEmpty(user);
@@ -72,6 +94,25 @@ public class UserService {
         return friendsDao.findFriends(id);
     }
 
+    public List<User> getFriendSuggestions(Integer id, Integer limit) {
+        checkUserExist(id);
+        if (limit <= 0 || limit > MAX_SUGGESTIONS) {
+            throw new BadRequestException(String.format("Incorrect parameters value: %s", limit));
+        }
+
+        int[] ids = friendGraph.suggest(id, limit);
+        Map<Integer, User> users = userStorage.findByIds(ids).stream()
+                .collect(Collectors.toMap(User::getId, Function.identity()));
+        return Arrays.stream(ids)
+                .mapToObj(users::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    public FriendGraphStats getFriendGraphStats() {
+        return friendGraph.getStats();
+    }
+
     public List<User> getCommonFriends(Integer id, Integer otherId) {
         checkUserExist(id);
         checkUserExist(otherId);
@@ -85,8 +126,7 @@ public class UserService {
     }
 
     public List<Film> getRecommendedFilm(Integer id) {
-        Integer recommendedId = likesDao.getUsersWithMaximumIntersectionLikes(id);
-        return likesDao.getRecommendedFilm(id, recommendedId);
+        return likesDao.getRecommendedFilm(id);
     }
 
     public void checkUserExist(Integer id) {
@@ -120,4 +160,24 @@ public class UserService {
         checkUserExist(id);
         return feedService.getByUserId(id);
     }
+
+    public Page<Feed> getFeedPageByUserId(Integer id, String after, Integer limit) {
+        checkUserExist(id);
+        return feedService.getPageByUserId(id, after, limit);
+    }
+
+    public Page<Feed> getFeedPageBeforeByUserId(Integer id, String before, Integer limit) {
+        checkUserExist(id);
+        return feedService.getPageBeforeByUserId(id, before, limit);
+    }
+
+    public Page<Feed> getFriendsFeed(Integer id, String before, Integer limit) {
+        checkUserExist(id);
+        return timelineService.getPage(id, before, limit);
+    }
+
+    public SseEmitter streamFeed(Integer id, Long lastEventId) {
+        checkUserExist(id);
+        return feedStreamHub.subscribe(id, lastEventId);
+    }
 }
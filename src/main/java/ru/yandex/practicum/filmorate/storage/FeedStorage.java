@@ -5,10 +5,49 @@ import ru.yandex.practicum.filmorate.model.enums.EventType;
 import ru.yandex.practicum.filmorate.model.enums.Operation;
 
 import java.util.List;
+import java.util.Map;
 
 public interface FeedStorage {
 
     List<Feed> findByUserId(int id);
 
+    /**
+     * Returns up to {@code limit} events of the user in chronological order, starting after the event with the
+     * given timestamp and id; both are {@code null} for the first page.
+     */
+    List<Feed> findPageByUserId(int id, Long afterTimestamp, Long afterEventId, int limit);
+
+    /**
+     * Returns up to {@code limit} events of the user, newest first, older than the event with the given timestamp
+     * and id; both are {@code null} for the first page.
+     */
+    List<Feed> findPageBeforeByUserId(int id, Long beforeTimestamp, Long beforeEventId, int limit);
+
+    /**
+     * Returns up to {@code limit} events of the user stored after the event with the given id, in id order.
+     */
+    List<Feed> findByUserIdAfterEventId(int id, long afterEventId, int limit);
+
     void addFeed(int idEntity, int idUser, long timestamp, EventType eventType, Operation operation);
+
+    /**
+     * Stores the events and sets their generated ids.
+     */
+    void addFeeds(List<Feed> events);
+
+    /**
+     * Returns the timestamp of the latest stored event of every user that has one.
+     */
+    Map<Integer, Long> findLastActivity();
+
+    /**
+     * Moves events older than {@code timestamp} into compressed per-user archive segments of up to
+     * {@code segmentSize} events and returns the number of archived events.
+     */
+    int archiveOlderThan(long timestamp, int segmentSize);
+
+    /**
+     * Returns the archived events of the user in chronological order.
+     */
+    List<Feed> findArchivedByUserId(int id);
 }
@@ -1,21 +1,44 @@
 package ru.yandex.practicum.filmorate.storage;
 
+import org.roaringbitmap.RoaringBitmap;
 import ru.yandex.practicum.filmorate.model.Film;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 public interface FilmStorage {
     List<Film> findAll();
 
+    RoaringBitmap findAllIds();
+
+    /**
+     * Returns up to {@code limit} films with id greater than {@code afterId}, ordered by id.
+     */
+    List<Film> findPage(int afterId, int limit);
+
+    /**
+     * Reads all films in id order through a forward-only cursor and passes them to the consumer in hydrated
+     * chunks of at most {@code chunkSize}, so the whole catalog is never held in memory.
+     */
+    void forEachChunk(int chunkSize, Consumer<List<Film>> consumer);
+
     Optional<Film> findById(Integer id);
 
+    List<Film> findByIds(List<Integer> ids);
+
     List<Film> findByDirectorIdSortedByYear(Integer directorId);
 
     List<Film> findByDirectorIdSortedByLikes(Integer directorId);
 
     Film create(Film film);
 
+    /**
+     * Creates the films with batched inserts, one transaction per chunk, and sets their ids.
+     * Mpa, genres and directors must already be known to exist.
+     */
+    List<Film> createAll(List<Film> films);
+
     Film update(Film film);
 
     List<Film> searchByTitle(String query);
@@ -8,8 +8,16 @@ import java.util.Optional;
 public interface ReviewStorage {
     List<Review> findAll(Integer filmId, Integer count);
 
+    /**
+     * Returns up to {@code limit} reviews ordered by usefulness descending and then by id, starting after the
+     * review with the given usefulness and id; both are {@code null} for the first page.
+     */
+    List<Review> findPage(Integer filmId, Integer afterUseful, Integer afterId, int limit);
+
     Optional<Review> findById(Integer id);
 
+    List<Review> findByIds(int[] ids);
+
     Review add(Review review);
 
     Review update(Review review);
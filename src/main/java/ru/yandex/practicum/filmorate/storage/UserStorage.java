@@ -1,5 +1,6 @@
 package ru.yandex.practicum.filmorate.storage;
 
+import org.roaringbitmap.RoaringBitmap;
 import ru.yandex.practicum.filmorate.model.User;
 
 import java.util.List;
@@ -7,6 +8,18 @@ import java.util.List;
 public interface UserStorage {
     List<User> findAll();
 
+    RoaringBitmap findAllIds();
+
+    /**
+     * Returns up to {@code limit} users with id greater than {@code afterId}, ordered by id.
+     */
+    List<User> findPage(int afterId, int limit);
+
+    /**
+     * Returns the users with the given ids, ordered by id, in a single query.
+     */
+    List<User> findByIds(int[] ids);
+
     User create(User user);
 
     User update(User user);
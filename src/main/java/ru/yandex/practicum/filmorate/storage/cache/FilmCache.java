@@ -0,0 +1,131 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.CacheStats;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of fully hydrated films in front of {@code FilmsDao}.
+ * Entries are evicted in least-recently-used order once the cache is full and expire after the configured TTL.
+ * <p>
+ * A load that raced with an invalidation is not stored: callers take {@link #version()} before reading
+ * from the database and pass it to {@link #put(Film, long)}.
+ */
+@Slf4j
+@Component
+public class FilmCache {
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final Map<Integer, Entry> entries;
+    private final AtomicLong version = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    public FilmCache(@Value("${filmorate.cache.films.max-size:10000}") int maxSize,
+                     @Value("${filmorate.cache.films.ttl:10m}") Duration ttl) {
+        this.maxSize = maxSize;
+        this.ttlNanos = ttl.toNanos();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+                if (size() > FilmCache.this.maxSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+        log.info("Film cache configured with max size {} and ttl {}", maxSize, ttl);
+    }
+
+    public synchronized Optional<Film> get(int id) {
+        Entry entry = entries.get(id);
+
+        if (entry == null) {
+            misses.increment();
+            return Optional.empty();
+        }
+        if (System.nanoTime() - entry.loadedAt > ttlNanos) {
+            entries.remove(id);
+            expirations.increment();
+            misses.increment();
+            return Optional.empty();
+        }
+
+        hits.increment();
+        return Optional.of(copyOf(entry.film));
+    }
+
+    public long version() {
+        return version.get();
+    }
+
+    public synchronized void put(Film film, long loadedVersion) {
+        if (maxSize > 0 && loadedVersion == version.get()) {
+            Film cached = film.toBuilder()
+                    .genres(List.copyOf(film.getGenres()))
+                    .directors(List.copyOf(film.getDirectors()))
+                    .build();
+            entries.put(film.getId(), new Entry(cached, System.nanoTime()));
+        }
+    }
+
+    public synchronized void invalidate(int id) {
+        version.incrementAndGet();
+        entries.remove(id);
+    }
+
+    public synchronized void invalidateByDirector(int directorId) {
+        version.incrementAndGet();
+        entries.values().removeIf(entry -> entry.film.getDirectors().stream()
+                .anyMatch(director -> director.getId() == directorId));
+    }
+
+    public synchronized void invalidateAll() {
+        version.incrementAndGet();
+        entries.clear();
+    }
+
+    public synchronized CacheStats stats() {
+        long hitCount = hits.sum();
+        long requestCount = hitCount + misses.sum();
+
+        return CacheStats.builder()
+                .size(entries.size())
+                .maxSize(maxSize)
+                .hits(hitCount)
+                .misses(misses.sum())
+                .evictions(evictions.sum())
+                .expirations(expirations.sum())
+                .hitRate(requestCount == 0 ? 0 : (double) hitCount / requestCount)
+                .build();
+    }
+
+    private static Film copyOf(Film film) {
+        return film.toBuilder().build();
+    }
+
+    private static class Entry {
+        private final Film film;
+        private final long loadedAt;
+
+        private Entry(Film film, long loadedAt) {
+            this.film = film;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.storage.dao.GenreDao;
+import ru.yandex.practicum.filmorate.storage.dao.MpaDao;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import static java.util.function.Function.identity;
+import static java.util.stream.Collectors.toMap;
+
+/**
+ * In-memory copy of the reference data films point to: MPA ratings, genres and directors.
+ * MPA and genres are seed data and are loaded once, directors are kept current by {@code DirectorDao}.
+ * Every id maps to one shared immutable instance.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ReferenceDataRegistry {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final RowMapper<Director> directorRowMapper;
+    private final MpaDao mpaDao;
+    private final GenreDao genreDao;
+
+    private volatile NavigableMap<Integer, Mpa> mpa = new TreeMap<>();
+    private volatile NavigableMap<Integer, Genre> genres = new TreeMap<>();
+    private final NavigableMap<Integer, Director> directors = new ConcurrentSkipListMap<>();
+
+    @PostConstruct
+    public void load() {
+        mpa = new TreeMap<>(mpaDao.findAll().stream().collect(toMap(Mpa::getId, identity())));
+        genres = new TreeMap<>(genreDao.findAll().stream().collect(toMap(Genre::getId, identity())));
+
+        directors.clear();
+        jdbcTemplate.query("SELECT * FROM directors", directorRowMapper).forEach(this::putDirector);
+
+        log.info("Reference data loaded: {} mpa, {} genres, {} directors", mpa.size(), genres.size(), directors.size());
+    }
+
+    public Optional<Mpa> findMpaById(int id) {
+        return Optional.ofNullable(mpa.get(id));
+    }
+
+    public List<Mpa> findAllMpa() {
+        return new ArrayList<>(mpa.values());
+    }
+
+    public Optional<Genre> findGenreById(int id) {
+        return Optional.ofNullable(genres.get(id));
+    }
+
+    public List<Genre> findAllGenres() {
+        return new ArrayList<>(genres.values());
+    }
+
+    public Optional<Director> findDirectorById(int id) {
+        return Optional.ofNullable(directors.get(id));
+    }
+
+    public List<Director> findAllDirectors() {
+        return new ArrayList<>(directors.values());
+    }
+
+    public void putDirector(Director director) {
+        directors.put(director.getId(), director);
+    }
+
+    public void removeDirector(int id) {
+        directors.remove(id);
+    }
+}
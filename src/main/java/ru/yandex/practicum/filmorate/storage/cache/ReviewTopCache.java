@@ -0,0 +1,304 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.yandex.practicum.filmorate.model.Review;
+import ru.yandex.practicum.filmorate.storage.event.FilmEvent;
+import ru.yandex.practicum.filmorate.storage.event.UserEvent;
+
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+import static java.util.stream.Collectors.toList;
+import static ru.yandex.practicum.filmorate.model.enums.Operation.REMOVE;
+
+/**
+ * The most useful reviews of recently requested films, kept in least-recently-used order.
+ * <p>
+ * An entry holds up to {@code top-size} reviews with their stored usefulness; the pending changes in
+ * {@link ReviewUsefulCounters} are added and the reviews ordered whenever the entry is read, so a reaction never
+ * rewrites a cached value and cannot be counted twice. An entry is complete when the film has no other reviews;
+ * otherwise a review that drops to the last place is removed, because an uncached one may now outrank it, and a
+ * request for more reviews than the entry holds reloads it.
+ * <p>
+ * Reviews are read from the database outside of any lock. As in {@link FilmCache}, a load is stamped with the version
+ * taken before the read and is returned but not stored if a review was added, changed, removed or flushed in the
+ * meantime. The map of entries is guarded by the cache and the reviews of a film by its entry, so reads and reactions
+ * on different films do not wait for each other.
+ */
+@Slf4j
+@Component
+public class ReviewTopCache {
+
+    private static final Comparator<Review> ORDER = Comparator.comparingInt(Review::getUseful).reversed()
+            .thenComparingInt(Review::getReviewId);
+
+    private final ReviewUsefulCounters reviewUsefulCounters;
+    private final int topSize;
+    private final Map<Integer, Entry> entries;
+    private final Map<Integer, Integer> filmByReview = new ConcurrentHashMap<>();
+    private final AtomicLong version = new AtomicLong();
+
+    public ReviewTopCache(ReviewUsefulCounters reviewUsefulCounters,
+                          @Value("${filmorate.cache.reviews.films:100}") int maxFilms,
+                          @Value("${filmorate.cache.reviews.top-size:50}") int topSize) {
+        this.reviewUsefulCounters = reviewUsefulCounters;
+        this.topSize = topSize;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+                if (size() > maxFilms) {
+                    eldest.getValue().detach();
+                    return true;
+                }
+                return false;
+            }
+        };
+        reviewUsefulCounters.onWritten(this::written);
+        log.info("Review top cache configured for {} films with {} reviews each", maxFilms, topSize);
+    }
+
+    public int getTopSize() {
+        return topSize;
+    }
+
+    /**
+     * Returns the {@code count} most useful reviews of the film, loading {@code top-size} of them on a miss.
+     *
+     * @param loader reads the given number of most useful reviews of the film as stored
+     */
+    public List<Review> getTop(int filmId, int count, IntFunction<List<Review>> loader) {
+        Entry cached = entry(filmId);
+        if (cached != null) {
+            List<Review> top = reviewUsefulCounters.read(() -> cached.top(count));
+            if (top != null) {
+                return top;
+            }
+        }
+
+        long loadedVersion = version.get();
+        Entry[] loaded = new Entry[1];
+        List<Review> top = reviewUsefulCounters.read(() -> {
+            List<Review> reviews = loader.apply(topSize);
+            loaded[0] = new Entry(filmId, reviews, reviews.size() < topSize);
+            return loaded[0].top(count);
+        });
+
+        synchronized (this) {
+            if (loadedVersion == version.get()) {
+                remove(filmId);
+                entries.put(filmId, loaded[0]);
+                loaded[0].reviews.forEach(review -> filmByReview.put(review.getReviewId(), filmId));
+            }
+        }
+        return top;
+    }
+
+    /**
+     * Takes a usefulness change, already added to {@link ReviewUsefulCounters}, into account.
+     *
+     * @param reviewOf reads the review as stored, only called when an uncached review may have climbed into a
+     *                 cached top
+     */
+    public void recordDelta(int reviewId, int delta, Supplier<Optional<Review>> reviewOf) {
+        Integer filmId = filmByReview.get(reviewId);
+
+        if (filmId != null) {
+            Entry entry = entry(filmId);
+            if (entry != null && delta < 0) {
+                reviewUsefulCounters.read(() -> entry.dropIfLast(reviewId));
+            }
+        } else if (delta > 0 && hasIncomplete()) {
+            long loadedVersion = version.get();
+            reviewUsefulCounters.read(reviewOf).ifPresent(review -> offer(review, loadedVersion));
+        }
+    }
+
+    public void added(Review review) {
+        offer(review, version.incrementAndGet());
+    }
+
+    public void updated(Review review) {
+        version.incrementAndGet();
+        Integer filmId = filmByReview.get(review.getReviewId());
+        Entry entry = filmId == null ? null : entry(filmId);
+
+        if (entry != null) {
+            entry.update(review);
+        }
+    }
+
+    public void removed(int reviewId) {
+        version.incrementAndGet();
+        Integer filmId = filmByReview.get(reviewId);
+        Entry entry = filmId == null ? null : entry(filmId);
+
+        if (entry != null) {
+            entry.remove(reviewId);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onFilm(FilmEvent event) {
+        if (event.getOperation() == REMOVE) {
+            version.incrementAndGet();
+            remove(event.getFilmId());
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onUser(UserEvent event) {
+        if (event.getOperation() == REMOVE) {
+            version.incrementAndGet();
+            // the user's reviews are gone, and the entries they were in no longer know what follows them
+            entries.values().removeIf(entry -> entry.detachIfReviewedBy(event.getUserId()));
+        }
+    }
+
+    /**
+     * Moves flushed changes into the stored values, called by {@link ReviewUsefulCounters} while reads are blocked.
+     */
+    private void written(Map<Integer, Long> deltas) {
+        version.incrementAndGet();
+        deltas.forEach((reviewId, delta) -> {
+            Integer filmId = filmByReview.get(reviewId);
+            Entry entry = filmId == null ? null : entry(filmId);
+
+            if (entry != null) {
+                entry.addUseful(reviewId, delta.intValue());
+            }
+        });
+    }
+
+    private void offer(Review review, long loadedVersion) {
+        Entry entry = entry(review.getFilmId());
+
+        if (entry != null) {
+            reviewUsefulCounters.read(() -> entry.offer(review, loadedVersion));
+        }
+    }
+
+    private synchronized Entry entry(int filmId) {
+        return entries.get(filmId);
+    }
+
+    private synchronized boolean hasIncomplete() {
+        return entries.values().stream().anyMatch(entry -> !entry.complete);
+    }
+
+    private void remove(int filmId) {
+        Entry entry = entries.remove(filmId);
+
+        if (entry != null) {
+            entry.detach();
+        }
+    }
+
+    private Review withPendingUseful(Review review) {
+        Review copy = copyOf(review);
+        copy.setUseful(review.getUseful() + reviewUsefulCounters.get(review.getReviewId()));
+        return copy;
+    }
+
+    private static Review copyOf(Review review) {
+        return Review.builder()
+                .reviewId(review.getReviewId())
+                .content(review.getContent())
+                .isPositive(review.getIsPositive())
+                .filmId(review.getFilmId())
+                .userId(review.getUserId())
+                .useful(review.getUseful())
+                .build();
+    }
+
+    private class Entry {
+        private final int filmId;
+        private final List<Review> reviews;
+        private volatile boolean complete;
+        private boolean detached;
+
+        private Entry(int filmId, List<Review> reviews, boolean complete) {
+            this.filmId = filmId;
+            this.reviews = reviews.stream().map(ReviewTopCache::copyOf).collect(toList());
+            this.complete = complete;
+        }
+
+        /**
+         * Returns the reviews with pending changes applied in order, or {@code null} if the entry holds too few.
+         */
+        private synchronized List<Review> top(int count) {
+            if (!complete && reviews.size() < count) {
+                return null;
+            }
+            return reviews.stream().map(ReviewTopCache.this::withPendingUseful).sorted(ORDER).limit(count)
+                    .collect(toList());
+        }
+
+        private synchronized void dropIfLast(int reviewId) {
+            if (!complete && !reviews.isEmpty() && last().getReviewId() == reviewId) {
+                remove(reviewId);
+            }
+        }
+
+        private synchronized void offer(Review review, long loadedVersion) {
+            if (detached || loadedVersion != version.get() || filmByReview.containsKey(review.getReviewId())) {
+                return;
+            }
+
+            if (complete || !reviews.isEmpty() && ORDER.compare(withPendingUseful(review), last()) < 0) {
+                reviews.add(copyOf(review));
+                filmByReview.put(review.getReviewId(), filmId);
+
+                if (reviews.size() > topSize) {
+                    remove(last().getReviewId());
+                    complete = false;
+                }
+            }
+        }
+
+        private synchronized void update(Review review) {
+            reviews.stream().filter(cached -> cached.getReviewId() == review.getReviewId()).findFirst()
+                    .ifPresent(cached -> {
+                        cached.setContent(review.getContent());
+                        cached.setIsPositive(review.getIsPositive());
+                    });
+        }
+
+        private synchronized void addUseful(int reviewId, int delta) {
+            reviews.stream().filter(cached -> cached.getReviewId() == reviewId).findFirst()
+                    .ifPresent(cached -> cached.setUseful(cached.getUseful() + delta));
+        }
+
+        private synchronized void remove(int reviewId) {
+            if (reviews.removeIf(review -> review.getReviewId() == reviewId)) {
+                filmByReview.remove(reviewId);
+            }
+        }
+
+        private synchronized boolean detachIfReviewedBy(int userId) {
+            if (reviews.stream().noneMatch(review -> review.getUserId() == userId)) {
+                return false;
+            }
+            detach();
+            return true;
+        }
+
+        private synchronized void detach() {
+            detached = true;
+            reviews.forEach(review -> filmByReview.remove(review.getReviewId(), filmId));
+        }
+
+        private Review last() {
+            return reviews.stream().map(ReviewTopCache.this::withPendingUseful).max(ORDER).orElseThrow();
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Usefulness changes of reviews not yet written to {@code reviews.useful}.
+ * <p>
+ * Every review has a striped {@link LongAdder}, so a burst of reactions to one review does not contend on a single
+ * counter or database row. {@link #flush(Consumer)} moves the net changes aside under the write lock and hands them
+ * to a writer outside of it, so reactions and reads go on while the database is updated; the changes being written
+ * still count in {@link #get(int)} until the write is committed. Reads that add pending changes to stored values run
+ * under {@link #read(Supplier)}, and when the writer runs in a transaction its commit takes the write lock, so a read
+ * never counts a change twice or not at all.
+ */
+@Component
+public class ReviewUsefulCounters {
+
+    private final Map<Integer, LongAdder> pending = new ConcurrentHashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<Consumer<Map<Integer, Long>>> writtenListeners = new CopyOnWriteArrayList<>();
+    private volatile Map<Integer, Long> flushing = Map.of();
+
+    public void add(int reviewId, int delta) {
+        if (delta == 0) {
+            return;
+        }
+        // the read lock keeps flush from dropping an adder this change is being added to
+        lock.readLock().lock();
+        try {
+            pending.computeIfAbsent(reviewId, id -> new LongAdder()).add(delta);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int get(int reviewId) {
+        LongAdder delta = pending.get(reviewId);
+        return (delta == null ? 0 : (int) delta.sum()) + flushing.getOrDefault(reviewId, 0L).intValue();
+    }
+
+    public <T> T read(Supplier<T> reader) {
+        lock.readLock().lock();
+        try {
+            return reader.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void read(Runnable reader) {
+        read(() -> {
+            reader.run();
+            return null;
+        });
+    }
+
+    /**
+     * Registers a listener called with the changes of every flush once they are written, before any read can see
+     * the stored values that include them.
+     */
+    public void onWritten(Consumer<Map<Integer, Long>> listener) {
+        writtenListeners.add(listener);
+    }
+
+    /**
+     * Passes the non-zero pending changes to the writer and returns their number. If the writer runs in a
+     * transaction, the changes are released on its commit and restored on its rollback.
+     */
+    public int flush(Consumer<Map<Integer, Long>> writer) {
+        Map<Integer, Long> deltas = new HashMap<>();
+
+        lock.writeLock().lock();
+        try {
+            pending.forEach((id, delta) -> {
+                long sum = delta.sum();
+                if (sum != 0) {
+                    deltas.put(id, sum);
+                    delta.add(-sum);
+                }
+            });
+            pending.values().removeIf(delta -> delta.sum() == 0);
+            flushing = deltas;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        if (deltas.isEmpty()) {
+            return 0;
+        }
+        try {
+            writer.accept(deltas);
+        } catch (RuntimeException e) {
+            complete(false);
+            throw e;
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    lock.writeLock().lock();
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    complete(status == STATUS_COMMITTED);
+                    if (lock.isWriteLockedByCurrentThread()) {
+                        lock.writeLock().unlock();
+                    }
+                }
+            });
+        } else {
+            complete(true);
+        }
+        return deltas.size();
+    }
+
+    public void discard(int reviewId) {
+        pending.remove(reviewId);
+    }
+
+    private void complete(boolean written) {
+        lock.writeLock().lock();
+        try {
+            if (written) {
+                Map<Integer, Long> deltas = flushing;
+                writtenListeners.forEach(listener -> listener.accept(deltas));
+            } else {
+                flushing.forEach((id, sum) -> pending.computeIfAbsent(id, key -> new LongAdder()).add(sum));
+            }
+            flushing = Map.of();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
@@ -2,6 +2,7 @@ package ru.yandex.practicum.filmorate.storage.dao;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
@@ -10,12 +11,18 @@ import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.model.Director;
 import ru.yandex.practicum.filmorate.storage.DirectorStorage;
+import ru.yandex.practicum.filmorate.storage.cache.FilmCache;
+import ru.yandex.practicum.filmorate.storage.cache.ReferenceDataRegistry;
+import ru.yandex.practicum.filmorate.storage.event.DirectorEvent;
 
 import java.sql.PreparedStatement;
 import java.util.List;
 import java.util.Optional;
 
 import static java.util.Objects.requireNonNull;
+import static ru.yandex.practicum.filmorate.model.enums.Operation.ADD;
+import static ru.yandex.practicum.filmorate.model.enums.Operation.REMOVE;
+import static ru.yandex.practicum.filmorate.model.enums.Operation.UPDATE;
 
 @Slf4j
 @Component
@@ -24,6 +31,9 @@ public class DirectorDao implements DirectorStorage {
 
     private final JdbcTemplate jdbcTemplate;
     private final RowMapper<Director> directorRowMapper;
+    private final ReferenceDataRegistry referenceDataRegistry;
+    private final FilmCache filmCache;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Override
     public List<Director> findAll() {
@@ -55,9 +65,11 @@ public class DirectorDao implements DirectorStorage {
         }, keyHolder);
 
         int id = requireNonNull(keyHolder.getKey()).intValue();
-        director.setId(id);
+        Director created = director.toBuilder().id(id).build();
+        referenceDataRegistry.putDirector(created);
+        eventPublisher.publishEvent(new DirectorEvent(id, ADD, created));
 
-        return director;
+        return created;
     }
 
     @Override
@@ -66,6 +78,9 @@ public class DirectorDao implements DirectorStorage {
         int directorId = director.getId();
 
         jdbcTemplate.update(sql, director.getName(), directorId);
+        referenceDataRegistry.putDirector(director);
+        filmCache.invalidateByDirector(directorId);
+        eventPublisher.publishEvent(new DirectorEvent(directorId, UPDATE, director));
 
         return director;
     }
@@ -74,5 +89,8 @@ public class DirectorDao implements DirectorStorage {
     public void delete(Integer id) {
         String sql = "DELETE FROM directors WHERE id = ?";
         jdbcTemplate.update(sql, id);
+        referenceDataRegistry.removeDirector(id);
+        filmCache.invalidateByDirector(id);
+        eventPublisher.publishEvent(new DirectorEvent(id, REMOVE, null));
     }
 }
@@ -1,15 +1,29 @@
 package ru.yandex.practicum.filmorate.storage.dao;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import ru.yandex.practicum.filmorate.mapper.FeedMapper;
 import ru.yandex.practicum.filmorate.model.Feed;
 import ru.yandex.practicum.filmorate.model.enums.EventType;
 import ru.yandex.practicum.filmorate.model.enums.Operation;
 import ru.yandex.practicum.filmorate.storage.FeedStorage;
+import ru.yandex.practicum.filmorate.storage.event.FeedEvent;
 
+import java.io.*;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 @Component
 @RequiredArgsConstructor
@@ -17,22 +31,199 @@ public class FeedDao implements FeedStorage {
 
     private final JdbcTemplate jdbcTemplate;
     private final FeedMapper feedRowMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Override
     public List<Feed> findByUserId(int id) {
 
-        String sql = "SELECT * FROM feed WHERE id_user = ? ORDER BY timestamp ASC";
+        String sql = "SELECT * FROM feed WHERE id_user = ? ORDER BY timestamp ASC, id_event ASC";
 
         return jdbcTemplate.query(sql, feedRowMapper, id);
     }
 
     @Override
+    public List<Feed> findPageByUserId(int id, Long afterTimestamp, Long afterEventId, int limit) {
+        if (afterEventId == null) {
+            String sql = "SELECT * FROM feed WHERE id_user = ? ORDER BY timestamp ASC, id_event ASC LIMIT ?";
+
+            return jdbcTemplate.query(sql, feedRowMapper, id, limit);
+        }
+
+        String sql = "SELECT * FROM feed WHERE id_user = ? " +
+                "AND (timestamp > ? OR (timestamp = ? AND id_event > ?)) " +
+                "ORDER BY timestamp ASC, id_event ASC LIMIT ?";
+
+        return jdbcTemplate.query(sql, feedRowMapper, id, afterTimestamp, afterTimestamp, afterEventId, limit);
+    }
+
+    @Override
+    public List<Feed> findPageBeforeByUserId(int id, Long beforeTimestamp, Long beforeEventId, int limit) {
+        if (beforeEventId == null) {
+            String sql = "SELECT * FROM feed WHERE id_user = ? ORDER BY timestamp DESC, id_event DESC LIMIT ?";
+
+            return jdbcTemplate.query(sql, feedRowMapper, id, limit);
+        }
+
+        String sql = "SELECT * FROM feed WHERE id_user = ? " +
+                "AND (timestamp < ? OR (timestamp = ? AND id_event < ?)) " +
+                "ORDER BY timestamp DESC, id_event DESC LIMIT ?";
+
+        return jdbcTemplate.query(sql, feedRowMapper, id, beforeTimestamp, beforeTimestamp, beforeEventId, limit);
+    }
+
+    @Override
+    public List<Feed> findByUserIdAfterEventId(int id, long afterEventId, int limit) {
+        String sql = "SELECT * FROM feed WHERE id_user = ? AND id_event > ? ORDER BY id_event LIMIT ?";
+
+        return jdbcTemplate.query(sql, feedRowMapper, id, afterEventId, limit);
+    }
+
+    @Override
+    @Transactional
     public void addFeed(int idEntity, int idUser, long timestamp, EventType eventType, Operation operation) {
+        addFeeds(List.of(Feed.builder()
+                .entityId(idEntity)
+                .userId(idUser)
+                .timestamp(timestamp)
+                .eventType(eventType)
+                .operation(operation)
+                .build()));
+    }
 
+    /**
+     * Inserts the events in one batch, all or none, and publishes them once they are committed.
+     */
+    @Override
+    @Transactional
+    public void addFeeds(List<Feed> events) {
         String sql = "INSERT INTO feed(id_entity, id_user, timestamp, event_type, operation) " +
                 "VALUES (?, ?, ?, ?, ?)";
 
-        jdbcTemplate.update(sql, idEntity, idUser, timestamp,
-                eventType.toString(), operation.toString());
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (PreparedStatement stmt = connection.prepareStatement(sql, new String[]{"id_event"})) {
+                for (Feed event : events) {
+                    stmt.setInt(1, event.getEntityId());
+                    stmt.setInt(2, event.getUserId());
+                    stmt.setLong(3, event.getTimestamp());
+                    stmt.setInt(4, event.getEventType().ordinal());
+                    stmt.setInt(5, event.getOperation().ordinal());
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+
+                try (ResultSet keys = stmt.getGeneratedKeys()) {
+                    for (Feed event : events) {
+                        if (!keys.next()) {
+                            throw new SQLException("Generated keys were not returned for the feed batch");
+                        }
+                        event.setEventId(keys.getLong(1));
+                    }
+                }
+            }
+            return null;
+        });
+        eventPublisher.publishEvent(new FeedEvent(events));
+    }
+
+    @Override
+    public Map<Integer, Long> findLastActivity() {
+        Map<Integer, Long> lastActivity = new HashMap<>();
+
+        jdbcTemplate.query("SELECT id_user, MAX(timestamp) AS last FROM feed GROUP BY id_user", rs -> {
+            lastActivity.put(rs.getInt("id_user"), rs.getLong("last"));
+        });
+        return lastActivity;
+    }
+
+    @Override
+    public int archiveOlderThan(long timestamp, int segmentSize) {
+        List<Integer> users = jdbcTemplate.queryForList("SELECT DISTINCT id_user FROM feed WHERE timestamp < ?",
+                Integer.class, timestamp);
+
+        int archived = 0;
+        for (int user : users) {
+            Integer count = transactionTemplate.execute(status -> archiveUser(user, timestamp, segmentSize));
+            archived += count == null ? 0 : count;
+        }
+        return archived;
+    }
+
+    @Override
+    public List<Feed> findArchivedByUserId(int id) {
+        String sql = "SELECT id_user, payload FROM feed_archive WHERE id_user = ? ORDER BY from_timestamp, id";
+
+        List<Feed> events = new ArrayList<>();
+        jdbcTemplate.query(sql, rs -> {
+            events.addAll(decode(rs.getInt("id_user"), rs.getBytes("payload")));
+        }, id);
+        return events;
+    }
+
+    private int archiveUser(int user, long timestamp, int segmentSize) {
+        String select = "SELECT * FROM feed WHERE id_user = ? AND timestamp < ? ORDER BY timestamp, id_event";
+        List<Feed> events = jdbcTemplate.query(select, feedRowMapper, user, timestamp);
+
+        String insert = "INSERT INTO feed_archive(id_user, from_timestamp, to_timestamp, events, payload) " +
+                "VALUES (?, ?, ?, ?, ?)";
+        List<Object[]> segments = new ArrayList<>();
+        for (int from = 0; from < events.size(); from += segmentSize) {
+            List<Feed> segment = events.subList(from, Math.min(from + segmentSize, events.size()));
+            segments.add(new Object[]{user, segment.get(0).getTimestamp(),
+                    segment.get(segment.size() - 1).getTimestamp(), segment.size(), encode(segment)});
+        }
+        jdbcTemplate.batchUpdate(insert, segments);
+
+        long lastEventId = events.stream().mapToLong(Feed::getEventId).max().orElse(0);
+        jdbcTemplate.update("DELETE FROM feed WHERE id_user = ? AND timestamp < ? AND id_event <= ?",
+                user, timestamp, lastEventId);
+        return events.size();
+    }
+
+    /**
+     * Packs events as gzipped fixed-width records; timestamps are stored as deltas, which compress well.
+     */
+    private static byte[] encode(List<Feed> events) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(bytes))) {
+            out.writeInt(events.size());
+            long previous = 0;
+            for (Feed event : events) {
+                out.writeLong(event.getEventId());
+                out.writeInt(event.getEntityId());
+                out.writeLong(event.getTimestamp() - previous);
+                out.writeByte(event.getEventType().ordinal());
+                out.writeByte(event.getOperation().ordinal());
+                previous = event.getTimestamp();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static List<Feed> decode(int user, byte[] payload) {
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(payload)))) {
+            int count = in.readInt();
+            List<Feed> events = new ArrayList<>(count);
+            long timestamp = 0;
+            for (int i = 0; i < count; i++) {
+                long eventId = in.readLong();
+                int entityId = in.readInt();
+                timestamp += in.readLong();
+                events.add(Feed.builder()
+                        .eventId(eventId)
+                        .entityId(entityId)
+                        .userId(user)
+                        .timestamp(timestamp)
+                        .eventType(EventType.values()[in.readByte()])
+                        .operation(Operation.values()[in.readByte()])
+                        .build());
+            }
+            return events;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 }
@@ -3,19 +3,26 @@ package ru.yandex.practicum.filmorate.storage.dao;
 import com.google.common.collect.Lists;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.dao.DataAccessException;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
 import ru.yandex.practicum.filmorate.model.Director;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
-import ru.yandex.practicum.filmorate.service.DirectorService;
-import ru.yandex.practicum.filmorate.service.GenreService;
+import ru.yandex.practicum.filmorate.model.Mpa;
 import ru.yandex.practicum.filmorate.service.MpaService;
 import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.cache.FilmCache;
+import ru.yandex.practicum.filmorate.storage.cache.ReferenceDataRegistry;
+import ru.yandex.practicum.filmorate.storage.event.FilmEvent;
+import ru.yandex.practicum.filmorate.storage.index.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.storage.index.LikesIndex;
 
 import java.sql.Date;
 import java.sql.PreparedStatement;
@@ -23,9 +30,15 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
 import java.util.stream.Collectors;
 
 import static java.util.stream.Collectors.toList;
+import static ru.yandex.practicum.filmorate.model.enums.Operation.ADD;
+import static ru.yandex.practicum.filmorate.model.enums.Operation.REMOVE;
+import static ru.yandex.practicum.filmorate.model.enums.Operation.UPDATE;
 import static org.springframework.util.CollectionUtils.isEmpty;
 
 
@@ -34,16 +47,64 @@ import static org.springframework.util.CollectionUtils.isEmpty;
 @RequiredArgsConstructor
 public class FilmsDao implements FilmStorage {
 
+    private static final int HYDRATION_CHUNK_SIZE = 1000;
+    private static final int EXPORT_FETCH_SIZE = 500;
+    private static final int BATCH_CHUNK_SIZE = 1000;
+    private static final String FILM_SELECT = "SELECT f.* FROM films f ";
+
     private final JdbcTemplate jdbcTemplate;
     private final MpaService mpaService;
-    private final GenreService genreService;
-    private final DirectorService directorService;
+    private final ReferenceDataRegistry referenceDataRegistry;
+    private final FilmCache filmCache;
+    private final FilmSearchIndex filmSearchIndex;
+    private final LikesIndex likesIndex;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
 
     @Override
     public List<Film> findAll() {
-        String sql = "SELECT * FROM films";
+        String sql = FILM_SELECT + "ORDER BY f.id";
+
+        return hydrate(jdbcTemplate.query(sql, (rs, rowNum) -> makeFilm(rs)));
+    }
+
+    @Override
+    public RoaringBitmap findAllIds() {
+        RoaringBitmap ids = new RoaringBitmap();
+        jdbcTemplate.query("SELECT id FROM films", rs -> {
+            ids.add(rs.getInt("id"));
+        });
+        return ids;
+    }
+
+    @Override
+    public List<Film> findPage(int afterId, int limit) {
+        String sql = FILM_SELECT + "WHERE f.id > ? ORDER BY f.id LIMIT ?";
+
+        return hydrate(jdbcTemplate.query(sql, (rs, rowNum) -> makeFilm(rs), afterId, limit));
+    }
 
-        return jdbcTemplate.query(sql, (rs, rowNum) -> makeFilmWithoutGenres(rs));
+    @Override
+    public void forEachChunk(int chunkSize, Consumer<List<Film>> consumer) {
+        String sql = FILM_SELECT + "ORDER BY f.id";
+        List<Film> chunk = new ArrayList<>(chunkSize);
+
+        jdbcTemplate.query(connection -> {
+            PreparedStatement stmt = connection.prepareStatement(sql,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            stmt.setFetchSize(EXPORT_FETCH_SIZE);
+            return stmt;
+        }, rs -> {
+            chunk.add(makeFilm(rs));
+            if (chunk.size() == chunkSize) {
+                consumer.accept(hydrate(chunk));
+                chunk.clear();
+            }
+        });
+
+        if (!chunk.isEmpty()) {
+            consumer.accept(hydrate(chunk));
+        }
     }
 
     @Override
@@ -93,12 +154,36 @@ public class FilmsDao implements FilmStorage {
 
         if (!isEmpty(film.getDirectors())) {
             setFilmDirectors(film);
-            film.setDirectors(getDirectorsByFilmId(film.getId()));
         }
+        film.setDirectors(getDirectorsByFilmId(film.getId()));
 
+        filmCache.invalidate(film.getId());
+        eventPublisher.publishEvent(new FilmEvent(film.getId(), ADD, film));
         return film;
     }
 
+    @Override
+    public List<Film> createAll(List<Film> films) {
+        for (List<Film> chunk : Lists.partition(films, BATCH_CHUNK_SIZE)) {
+            transactionTemplate.executeWithoutResult(status -> {
+                insertFilms(chunk);
+                insertLinks("INSERT INTO film_genres(id_film, id_genre) VALUES (?, ?)", chunk, Film::getGenres,
+                        Genre::getId);
+                insertLinks("INSERT INTO film_directors(film_id, director_id) VALUES (?, ?)", chunk,
+                        Film::getDirectors, Director::getId);
+
+                for (Film film : chunk) {
+                    resolveReferences(film);
+                    filmCache.invalidate(film.getId());
+                    eventPublisher.publishEvent(new FilmEvent(film.getId(), ADD, film));
+                }
+            });
+            log.info("Batch of {} films created", chunk.size());
+        }
+
+        return films;
+    }
+
     @Override
     public Film update(Film film) {
         Film oldFilm = findById(film.getId()).orElseThrow();
@@ -129,71 +214,87 @@ public class FilmsDao implements FilmStorage {
 
         if (!isEmpty(film.getDirectors())) {
             setFilmDirectors(film);
-            film.setDirectors(getDirectorsByFilmId(film.getId()));
         }
+        film.setDirectors(getDirectorsByFilmId(film.getId()));
 
+        filmCache.invalidate(film.getId());
+        eventPublisher.publishEvent(new FilmEvent(film.getId(), UPDATE, film));
         return film;
     }
 
     @Override
     public Optional<Film> findById(Integer id) {
-        String sql = "SELECT * FROM films WHERE id = ?";
+        Optional<Film> cached = filmCache.get(id);
+        if (cached.isPresent()) {
+            return cached;
+        }
+
+        long version = filmCache.version();
+        String sql = FILM_SELECT + "WHERE f.id = ?";
+        Optional<Film> film = hydrate(jdbcTemplate.query(sql, (rs, rowNum) -> makeFilm(rs), id)).stream().findFirst();
+
+        film.ifPresent(loaded -> filmCache.put(loaded, version));
+        return film;
+    }
+
+    @Override
+    public List<Film> findByIds(List<Integer> ids) {
+        Map<Integer, Film> films = new HashMap<>();
+        List<Integer> missing = new ArrayList<>();
+
+        for (Integer id : new LinkedHashSet<>(ids)) {
+            filmCache.get(id).ifPresentOrElse(film -> films.put(id, film), () -> missing.add(id));
+        }
 
-        try {
-            return Optional.ofNullable(jdbcTemplate.queryForObject(sql, (rs, rowNum) -> makeFilm(rs), id));
-        } catch (DataAccessException e) {
-            return Optional.empty();
+        long version = filmCache.version();
+        for (List<Integer> chunk : Lists.partition(missing, HYDRATION_CHUNK_SIZE)) {
+            String sql = FILM_SELECT + "WHERE f.id IN (" + placeholders(chunk.size()) + ")";
+
+            hydrate(jdbcTemplate.query(sql, (rs, rowNum) -> makeFilm(rs), chunk.toArray()))
+                    .forEach(film -> {
+                        films.put(film.getId(), film);
+                        filmCache.put(film, version);
+                    });
         }
+
+        return ids.stream()
+                .distinct()
+                .map(films::get)
+                .filter(Objects::nonNull)
+                .collect(toList());
     }
 
     @Override
     public List<Film> findByDirectorIdSortedByYear(Integer directorId) {
-        String sqlQuery = "SELECT * FROM films f "
+        String sqlQuery = FILM_SELECT
                 + "WHERE f.id IN (SELECT film_id FROM film_directors WHERE director_id = ?) "
-                + "ORDER BY EXTRACT(YEAR FROM releasedate) ASC";
+                + "ORDER BY EXTRACT(YEAR FROM f.releasedate) ASC, f.id";
 
-        return jdbcTemplate.query(sqlQuery, (rs, rowNum) -> makeFilm(rs), directorId)
-                .stream()
-                .map(film -> findById(film.getId()).orElseThrow())
-                .collect(toList());
+        return hydrate(jdbcTemplate.query(sqlQuery, (rs, rowNum) -> makeFilm(rs), directorId));
     }
 
     @Override
     public List<Film> findByDirectorIdSortedByLikes(Integer directorId) {
-        String sqlQuery = "SELECT * FROM "
-                + "(SELECT * FROM films f WHERE f.id IN (SELECT film_id FROM film_directors WHERE director_id = ?)) "
-                + "LEFT JOIN (SELECT id_film, count(*) likes_count FROM likes_by_users GROUP BY id_film) l "
-                + "ORDER BY likes_count ASC";
-
-        return jdbcTemplate.query(sqlQuery, (rs, rowNum) -> makeFilm(rs), directorId)
-                .stream()
-                .map(film -> findById(film.getId()).orElseThrow())
-                .collect(toList());
+        String sqlQuery = FILM_SELECT
+                + "WHERE f.id IN (SELECT film_id FROM film_directors WHERE director_id = ?) "
+                + "ORDER BY f.likes_count DESC, f.id";
+
+        return hydrate(jdbcTemplate.query(sqlQuery, (rs, rowNum) -> makeFilm(rs), directorId));
     }
 
     @Override
     public List<Film> searchByTitle(String query) {
-        String sql = "SELECT * FROM films AS f WHERE locate(?, lower(name)) > 0";
-        return jdbcTemplate.query(sql, (rs, rowNum) -> makeFilm(rs), query.toLowerCase());
+        return findByIds(filmSearchIndex.searchByTitle(query));
     }
 
     @Override
     public List<Film> searchByDirector(String query) {
-        String sql = "SELECT * FROM films AS f, film_directors AS fd, directors AS d " +
-                "WHERE f.id = fd.film_id AND fd.director_id = d.id AND locate(?, lower(d.name)) > 0";
-        return jdbcTemplate.query(sql, (rs, rowNum) -> makeFilm(rs), query.toLowerCase());
+        return findByIds(filmSearchIndex.searchByDirector(query));
     }
 
     @Override
     public List<Film> searchByTitleAndDirector(String query) {
-        String sql = "SELECT * FROM films AS f, film_directors AS fd, directors AS d " +
-                "WHERE (locate(?, lower(f.name)) > 0 OR (f.id = fd.film_id AND fd.director_id = d.id AND locate(?, lower(d.name)) > 0))";
-        List<Film> ans = jdbcTemplate.query(sql, (rs, rowNum) -> makeFilm(rs), query.toLowerCase(), query.toLowerCase());
-        HashSet<Film> uniqueList = new HashSet<>(ans);
-        ans = new ArrayList<>();
-        ans.addAll(uniqueList);
-        Collections.reverse(ans);
-        return ans;
+        return findByIds(filmSearchIndex.searchByTitleAndDirector(query));
     }
 
     @Override
@@ -201,30 +302,136 @@ public class FilmsDao implements FilmStorage {
         log.info("Request to delete film with id: {}", id);
         String sql = "DELETE FROM films WHERE id = ?";
         jdbcTemplate.update(sql, id);
+        filmCache.invalidate(id);
+        eventPublisher.publishEvent(new FilmEvent(id, REMOVE, null));
     }
 
     @Override
     public List<Film> getCommonFilms(Integer userId, Integer friendId) {
-        String sql = "SELECT * FROM films f WHERE id IN " +
-                "(SELECT l1.id_film FROM likes_by_users l1, likes_by_users l2 " +
-                "WHERE l1.id_film = l2.id_film AND l1.id_user = ? AND l2.id_user = ? " +
-                "GROUP BY l1.id_film ORDER BY COUNT(l1.id_user) DESC)";
+        return findByIds(likesIndex.getCommonFilms(userId, friendId));
+    }
 
-        return jdbcTemplate.query(sql, (rs, rowMap) -> makeFilm(rs), userId, friendId);
+    /**
+     * Loads genres and directors for the given films with two set-based queries per chunk
+     * instead of querying them film by film. The rows only carry ids, the instances come from the registry.
+     */
+    private List<Film> hydrate(List<Film> films) {
+        for (List<Film> chunk : Lists.partition(films, HYDRATION_CHUNK_SIZE)) {
+            List<Integer> ids = chunk.stream().map(Film::getId).collect(toList());
+            Map<Integer, List<Genre>> genres = findGenresByFilmIds(ids);
+            Map<Integer, List<Director>> directors = findDirectorsByFilmIds(ids);
+
+            for (Film film : chunk) {
+                film.setGenres(genres.getOrDefault(film.getId(), new ArrayList<>()));
+                film.setDirectors(directors.getOrDefault(film.getId(), new ArrayList<>()));
+            }
+        }
+
+        return films;
     }
 
-    private List<Genre> getGenresByFilmId(int filmId) {
-        String sql = "SELECT id_genre FROM film_genres WHERE id_film = ?";
-        List<Integer> genresId = jdbcTemplate.query(sql, (rs, rowNum) -> rs.getInt("id_genre"), filmId);
+    private Map<Integer, List<Genre>> findGenresByFilmIds(List<Integer> filmIds) {
+        String sql = "SELECT id_film, id_genre FROM film_genres " +
+                "WHERE id_film IN (" + placeholders(filmIds.size()) + ") ORDER BY id_film, id_genre";
+
+        return groupByFilmId(sql, filmIds, rs -> Optional.of(findGenre(rs.getInt("id_genre"))));
+    }
+
+    private Map<Integer, List<Director>> findDirectorsByFilmIds(List<Integer> filmIds) {
+        String sql = "SELECT film_id AS id_film, director_id FROM film_directors " +
+                "WHERE film_id IN (" + placeholders(filmIds.size()) + ") ORDER BY film_id, director_id";
+
+        // unlike genres, a director may be deleted while its films are read, so a missing one is just skipped
+        return groupByFilmId(sql, filmIds, rs -> referenceDataRegistry.findDirectorById(rs.getInt("director_id")));
+    }
+
+    private <T> Map<Integer, List<T>> groupByFilmId(String sql, List<Integer> filmIds, RowLookup<T> lookup) {
+        Map<Integer, List<T>> result = new HashMap<>();
+
+        if (filmIds.isEmpty()) {
+            return result;
+        }
 
-        return genresId.stream().map(genreService::getById).collect(toList());
+        jdbcTemplate.query(sql, rs -> {
+            List<T> values = result.computeIfAbsent(rs.getInt("id_film"), id -> new ArrayList<>());
+            lookup.find(rs).ifPresent(values::add);
+        }, filmIds.toArray());
+
+        return result;
+    }
+
+    private List<Genre> getGenresByFilmId(int filmId) {
+        return findGenresByFilmIds(List.of(filmId)).getOrDefault(filmId, new ArrayList<>());
     }
 
     private List<Director> getDirectorsByFilmId(int filmId) {
-        String sql = "SELECT director_id FROM film_directors WHERE film_id = ?";
-        List<Integer> directorsId = jdbcTemplate.query(sql, (rs, rowNum) -> rs.getInt("director_id"), filmId);
+        return findDirectorsByFilmIds(List.of(filmId)).getOrDefault(filmId, new ArrayList<>());
+    }
 
-        return directorsId.stream().map(directorService::getById).collect(toList());
+    private void insertFilms(List<Film> films) {
+        String sql = "INSERT INTO films(name, description, releasedate, duration, mpa) VALUES (?, ?, ?, ?, ?)";
+
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (PreparedStatement stmt = connection.prepareStatement(sql, new String[]{"id"})) {
+                for (Film film : films) {
+                    stmt.setString(1, film.getName());
+                    stmt.setString(2, film.getDescription());
+                    stmt.setDate(3, Date.valueOf(film.getReleaseDate()));
+                    stmt.setInt(4, film.getDuration());
+                    stmt.setInt(5, film.getMpa().getId());
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+
+                try (ResultSet keys = stmt.getGeneratedKeys()) {
+                    for (Film film : films) {
+                        if (!keys.next()) {
+                            throw new SQLException("Generated keys were not returned for the film batch");
+                        }
+                        film.setId(keys.getInt(1));
+                    }
+                }
+            }
+            return null;
+        });
+    }
+
+    private <T> void insertLinks(String sql, List<Film> films, Function<Film, List<T>> links,
+                                 ToIntFunction<T> idOf) {
+        List<Object[]> rows = new ArrayList<>();
+
+        for (Film film : films) {
+            if (!isEmpty(links.apply(film))) {
+                links.apply(film).stream()
+                        .mapToInt(idOf)
+                        .distinct()
+                        .forEach(id -> rows.add(new Object[]{film.getId(), id}));
+            }
+        }
+
+        if (!rows.isEmpty()) {
+            jdbcTemplate.batchUpdate(sql, rows);
+        }
+    }
+
+    /**
+     * Replaces the client-supplied mpa, genres and directors with the registry instances, ordered the same way
+     * as when the film is read back.
+     */
+    private void resolveReferences(Film film) {
+        film.setMpa(referenceDataRegistry.findMpaById(film.getMpa().getId()).orElseThrow());
+        film.setGenres(isEmpty(film.getGenres()) ? new ArrayList<>() : film.getGenres().stream()
+                .map(Genre::getId)
+                .distinct()
+                .sorted()
+                .map(id -> referenceDataRegistry.findGenreById(id).orElseThrow())
+                .collect(toList()));
+        film.setDirectors(isEmpty(film.getDirectors()) ? new ArrayList<>() : film.getDirectors().stream()
+                .map(Director::getId)
+                .distinct()
+                .sorted()
+                .map(id -> referenceDataRegistry.findDirectorById(id).orElseThrow())
+                .collect(toList()));
     }
 
     private void setFilmDirectors(Film film) {
@@ -247,12 +454,6 @@ public class FilmsDao implements FilmStorage {
     }
 
     private Film makeFilm(ResultSet rs) throws SQLException {
-        Film film = makeFilmWithoutGenres(rs);
-        film.setGenres(getGenresByFilmId(rs.getInt("id")));
-        return film;
-    }
-
-    private Film makeFilmWithoutGenres(ResultSet rs) throws SQLException {
         LocalDate releaseDate =
                 rs.getDate("releaseDate") == null ?
                         null : rs.getDate("releaseDate").toLocalDate();
@@ -262,8 +463,27 @@ public class FilmsDao implements FilmStorage {
                 .description(rs.getString("description"))
                 .releaseDate(releaseDate)
                 .duration(rs.getInt("duration"))
-                .mpa(mpaService.getById(rs.getInt("mpa")))
-                .directors(getDirectorsByFilmId(rs.getInt("id")))
+                .mpa(rs.getObject("mpa") == null ? null : findMpa(rs.getInt("mpa")))
                 .build();
     }
+
+    private Mpa findMpa(int id) {
+        // MPA ratings and genres are seed data loaded once, so one unknown to the registry means it is out of date
+        return referenceDataRegistry.findMpaById(id).orElseThrow(() -> new IllegalStateException(
+                String.format("MPA rating with id: %d is missing from the reference data", id)));
+    }
+
+    private Genre findGenre(int id) {
+        return referenceDataRegistry.findGenreById(id).orElseThrow(() -> new IllegalStateException(
+                String.format("Genre with id: %d is missing from the reference data", id)));
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    @FunctionalInterface
+    private interface RowLookup<T> {
+        Optional<T> find(ResultSet rs) throws SQLException;
+    }
 }
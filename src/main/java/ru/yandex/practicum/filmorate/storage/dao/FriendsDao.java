@@ -2,12 +2,18 @@ package ru.yandex.practicum.filmorate.storage.dao;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.event.FriendEvent;
+import ru.yandex.practicum.filmorate.storage.index.FriendGraph;
 
 import java.util.List;
 
+import static ru.yandex.practicum.filmorate.model.enums.Operation.ADD;
+import static ru.yandex.practicum.filmorate.model.enums.Operation.REMOVE;
+
 @Slf4j
 @Component
 @RequiredArgsConstructor
@@ -15,30 +21,33 @@ public class FriendsDao {
 
     private final JdbcTemplate jdbcTemplate;
     private final UsersDao userStorage;
+    private final ApplicationEventPublisher eventPublisher;
+    private final FriendGraph friendGraph;
 
     public void addFriend(Integer id, Integer friendId) {
         String sql = "INSERT INTO friends(id_user, id_friend) VALUES (?, ?)";
         jdbcTemplate.update(sql, id, friendId);
+        eventPublisher.publishEvent(new FriendEvent(id, friendId, ADD));
         log.info("Added friendship for user with id: {} from other user with id: {}", id, friendId);
     }
 
     public void removeFriend(Integer id, Integer idUser) {
         String sql = "DELETE FROM friends WHERE id_user = ? AND id_friend = ?";
-        jdbcTemplate.update(sql, id, idUser);
+        if (jdbcTemplate.update(sql, id, idUser) > 0) {
+            eventPublisher.publishEvent(new FriendEvent(id, idUser, REMOVE));
+        }
         log.info("Friendship of user with id: {} and other user with id: {} removed", id, idUser);
     }
 
     public List<User> findFriends(Integer id) {
-        String sql = "SELECT * FROM users u, friends f WHERE f.id_user = ? AND u.id = f.id_friend";
+        return userStorage.findByIds(friendGraph.getFriends(id));
+    }
 
-        return jdbcTemplate.query(sql, (rs, rowNum) -> userStorage.makeUser(rs), id);
+    public int[] findFriendIds(Integer id) {
+        return friendGraph.getFriends(id);
     }
 
     public List<User> findCommonFriends(Integer id, Integer otherId) {
-        String sql = "SELECT * FROM users u, friends f, friends o WHERE u.id = f.id_friend AND u.id = o.id_friend " +
-                "AND f.id_user = ? AND o.id_user = ?";
-
-        return jdbcTemplate.query(sql, (rs, rowNum) -> userStorage.makeUser(rs),
-                id, otherId);
+        return userStorage.findByIds(friendGraph.getCommonFriends(id, otherId));
     }
 }
@@ -2,93 +2,173 @@ package ru.yandex.practicum.filmorate.storage.dao;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.dto.LikeImportRecord;
 import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.event.LikeEvent;
+import ru.yandex.practicum.filmorate.storage.index.LikesIndex;
+import ru.yandex.practicum.filmorate.storage.index.PopularityIndex;
+import ru.yandex.practicum.filmorate.storage.index.SimilarFilmsIndex;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
+import static java.util.stream.Collectors.counting;
+import static java.util.stream.Collectors.groupingBy;
 import static java.util.stream.Collectors.toList;
+import static ru.yandex.practicum.filmorate.model.enums.Operation.ADD;
+import static ru.yandex.practicum.filmorate.model.enums.Operation.REMOVE;
 
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class LikesDao {
 
+    private static final String MERGE_LIKE_SQL = "MERGE INTO likes_by_users l " +
+            "USING (VALUES (CAST(? AS INTEGER), CAST(? AS INTEGER))) AS s(id_film, id_user) " +
+            "ON l.id_film = s.id_film AND l.id_user = s.id_user " +
+            "WHEN NOT MATCHED THEN INSERT (id_film, id_user) VALUES (s.id_film, s.id_user)";
+
     private final JdbcTemplate jdbcTemplate;
     private final FilmStorage filmStorage;
+    private final PopularityIndex popularityIndex;
+    private final LikesIndex likesIndex;
+    private final SimilarFilmsIndex similarFilmsIndex;
+    private final ApplicationEventPublisher eventPublisher;
 
-    public void addLike(Integer idFilm, Integer idUser) {
-        filmStorage.findById(idFilm);
-        removeLike(idFilm, idUser);
+    /**
+     * Adds the like unless it already exists.
+     *
+     * @return {@code true} if the like was added, {@code false} if it was already there
+     * @throws NotFoundException if the film or the user does not exist
+     */
+    @Transactional
+    public boolean addLike(Integer idFilm, Integer idUser) {
+        int added;
+        try {
+            added = jdbcTemplate.update(MERGE_LIKE_SQL, idFilm, idUser);
+        } catch (DuplicateKeyException e) {
+            added = 0;
+        } catch (DataIntegrityViolationException e) {
+            throw missingReference(idFilm, idUser, e);
+        }
 
-        String sql = "INSERT INTO likes_by_users(id_film, id_user) VALUES (?, ?)";
-        jdbcTemplate.update(sql, idFilm, idUser);
+        if (added == 0) {
+            return false;
+        }
+
+        updateLikesCount(idFilm, 1);
+        eventPublisher.publishEvent(new LikeEvent(idFilm, idUser, ADD));
         log.info("Like added for film with id: {} from user with id: {}", idFilm, idUser);
+        return true;
     }
 
-    public void removeLike(Integer idFilm, Integer idUser) {
-        filmStorage.findById(idFilm);
-
+    /**
+     * Removes the like if it exists.
+     *
+     * @return {@code true} if the like was removed, {@code false} if there was none
+     */
+    @Transactional
+    public boolean removeLike(Integer idFilm, Integer idUser) {
         String sql = "DELETE FROM likes_by_users WHERE id_film = ? AND id_user = ?";
-        jdbcTemplate.update(sql, idFilm, idUser);
+
+        if (jdbcTemplate.update(sql, idFilm, idUser) == 0) {
+            return false;
+        }
+
+        updateLikesCount(idFilm, -1);
+        eventPublisher.publishEvent(new LikeEvent(idFilm, idUser, REMOVE));
         log.info("Like removed for film with id: {} from user with id: {}", idFilm, idUser);
+        return true;
+    }
+
+    /**
+     * Inserts the likes that do not exist yet with one batched MERGE, bumps {@code likes_count} once per film and
+     * publishes a {@link LikeEvent} for every new like.
+     *
+     * @return likes that were actually added, in input order
+     */
+    @Transactional
+    public List<LikeImportRecord> importLikes(List<LikeImportRecord> likes) {
+        int[] counts = jdbcTemplate.batchUpdate(MERGE_LIKE_SQL, likes.stream()
+                .map(like -> new Object[]{like.getFilmId(), like.getUserId()})
+                .collect(toList()));
+
+        List<LikeImportRecord> added = new ArrayList<>();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                added.add(likes.get(i));
+            }
+        }
+
+        Map<Integer, Long> perFilm = added.stream()
+                .collect(groupingBy(LikeImportRecord::getFilmId, counting()));
+        jdbcTemplate.batchUpdate("UPDATE films SET likes_count = likes_count + ? WHERE id = ?",
+                perFilm.entrySet().stream()
+                        .map(entry -> new Object[]{entry.getValue(), entry.getKey()})
+                        .collect(toList()));
+
+        added.forEach(like -> eventPublisher.publishEvent(new LikeEvent(like.getFilmId(), like.getUserId(), ADD)));
+        log.info("Imported {} of {} likes", added.size(), likes.size());
+        return added;
+    }
+
+    /**
+     * Recalculates {@code films.likes_count} from {@code likes_by_users} for films where they differ.
+     *
+     * @return number of repaired films
+     */
+    @Transactional
+    public int reconcileLikesCount() {
+        String sql = "UPDATE films f SET likes_count = " +
+                "(SELECT COUNT(*) FROM likes_by_users l WHERE l.id_film = f.id) " +
+                "WHERE likes_count <> (SELECT COUNT(*) FROM likes_by_users l WHERE l.id_film = f.id)";
+
+        return jdbcTemplate.update(sql);
     }
 
     public List<Film> getPopular(Integer count, Optional<Integer> genreId, Optional<Integer> year) {
-        final String sqlQuery = "SELECT * FROM films f "
-                + "LEFT JOIN (SELECT id_film, count(*) likes_count FROM likes_by_users GROUP BY id_film) l ON f.id = l.id_film "
-                + "ORDER BY l.likes_count DESC LIMIT ?";
+        return filmStorage.findByIds(popularityIndex.getTop(count, genreId, year));
+    }
 
-        var stream = jdbcTemplate
-                .query(sqlQuery, (rs, rowNum) -> filmStorage.findById(rs.getInt("id")), count)
-                .stream()
-                .map(film -> filmStorage.findById(film.orElseThrow().getId()));
+    public List<Film> getSimilar(Integer idFilm, Integer count) {
+        return filmStorage.findByIds(similarFilmsIndex.getSimilar(idFilm, count));
+    }
 
-        if (year.isPresent()) {
-            stream = stream.filter(film -> film.orElseThrow().getReleaseDate().getYear() == year.get());
+    public List<Film> getRecommendedFilm(Integer idUser) {
+        log.info("Request to get recommended films for user with id: {}", idUser);
+        return filmStorage.findByIds(likesIndex.recommend(idUser));
+    }
+
+    /**
+     * Names the row a failed like insert points to, or rethrows the violation if both exist.
+     */
+    private RuntimeException missingReference(int idFilm, int idUser, DataIntegrityViolationException e) {
+        if (!exists("films", idFilm)) {
+            return new NotFoundException(String.format("Film with id: %d not found", idFilm));
         }
-        if (genreId.isPresent()) {
-            stream = stream.filter(film -> film.orElseThrow().getGenres()
-                    .stream().anyMatch(genre -> genre.getId() == genreId.get()));
+        if (!exists("users", idUser)) {
+            return new NotFoundException(String.format("User with id: %d not found", idUser));
         }
-
-        return stream.map(Optional::orElseThrow).collect(toList());
+        return e;
     }
 
-    public List<Film> getRecommendedFilm(Integer idUser, Integer recommendedIdUser) {
-        log.info("Request to get recommended film from user with id: {}", idUser);
-        String sql2 = "SELECT * FROM films AS f " +
-                "   JOIN mpa AS m ON f.mpa = m.id " +
-                "   WHERE f.id IN (SELECT id_film FROM likes_by_users WHERE id_user = ? AND " +
-                "   id_film NOT IN (SELECT id_film FROM likes_by_users WHERE id_user = ?))";
-        try {
-            return new ArrayList<>(jdbcTemplate.query(sql2,
-                    (rs, rowNum) -> filmStorage.findById(rs.getInt("id")).orElseThrow(),
-                    recommendedIdUser, idUser));
-        } catch (EmptyResultDataAccessException e) {
-            log.debug("No record found in database for " + recommendedIdUser, e);
-            return null;
-        }
+    private boolean exists(String table, int id) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT EXISTS(SELECT 1 FROM " + table + " WHERE id = ?)", Boolean.class, id));
     }
 
-    public Integer getUsersWithMaximumIntersectionLikes(Integer idUser) {
-        log.info("Request to get user with maximum intersection likes from user with id: {}", idUser);
-        String sql = "SELECT l2.id_user AS recommended" +
-                "   FROM likes_by_users l1 JOIN likes_by_users l2 " +
-                "   ON l1.id_film = l2.id_film " +
-                "   WHERE l1.id_user = ? AND l1.id_user <> l2.id_user" +
-                "   GROUP BY l1.id_user, l2.id_user" +
-                "   ORDER BY COUNT(*) DESC LIMIT 1";
-        try {
-            return jdbcTemplate.queryForObject(sql, Integer.class, idUser);
-        } catch (EmptyResultDataAccessException e) {
-            log.debug("No record found in database for " + idUser, e);
-            return idUser;
-        }
+    private void updateLikesCount(Integer idFilm, int delta) {
+        String sql = "UPDATE films SET likes_count = likes_count + ? WHERE id = ?";
+        jdbcTemplate.update(sql, delta, idFilm);
     }
 }
@@ -1,22 +1,38 @@
 package ru.yandex.practicum.filmorate.storage.dao;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Review;
 import ru.yandex.practicum.filmorate.storage.ReviewStorage;
 
 import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
 @Component
 @RequiredArgsConstructor
 public class ReviewDao implements ReviewStorage {
+    private static final String SWITCH_REACTION_SQL = "UPDATE review_reactions SET is_like = ? " +
+            "WHERE id_review = ? AND id_user = ? AND is_like <> ?";
+    private static final String MERGE_REACTION_SQL = "MERGE INTO review_reactions r " +
+            "USING (VALUES (CAST(? AS INTEGER), CAST(? AS INTEGER), CAST(? AS BOOLEAN))) " +
+            "AS s(id_review, id_user, is_like) " +
+            "ON r.id_review = s.id_review AND r.id_user = s.id_user " +
+            "WHEN NOT MATCHED THEN INSERT (id_review, id_user, is_like) VALUES (s.id_review, s.id_user, s.is_like)";
+
     private final JdbcTemplate jdbcTemplate;
     private final RowMapper<Review> reviewRowMapper;
 
@@ -26,6 +42,18 @@ public class ReviewDao implements ReviewStorage {
         return jdbcTemplate.query(sql, reviewRowMapper, id).stream().findFirst();
     }
 
+    @Override
+    public List<Review> findByIds(int[] ids) {
+        if (ids.length == 0) {
+            return List.of();
+        }
+
+        String sql = "SELECT * FROM reviews WHERE id IN (" + String.join(", ", Collections.nCopies(ids.length, "?")) +
+                ") ORDER BY id";
+
+        return jdbcTemplate.query(sql, reviewRowMapper, Arrays.stream(ids).boxed().toArray());
+    }
+
     @Override
     public Review add(Review review) {
         String sql = "INSERT INTO reviews(content,is_positive,id_user,id_film,useful) VALUES(?,?,?,?,?)";
@@ -59,40 +87,98 @@ public class ReviewDao implements ReviewStorage {
 
     @Override
     public List<Review> findAll(Integer filmId, Integer count) {
+        return findPage(filmId, null, null, count);
+    }
+
+    @Override
+    public List<Review> findPage(Integer filmId, Integer afterUseful, Integer afterId, int limit) {
+        List<String> conditions = new ArrayList<>();
+        List<Object> args = new ArrayList<>();
+
         if (filmId != null) {
-            String sql = "SELECT * FROM reviews WHERE id_film = ? ORDER BY useful DESC ";
-            List<Review> reviews = jdbcTemplate.query(sql, reviewRowMapper, filmId)
-                    .stream()
-                    .limit(count)
-                    .collect(Collectors.toList());
-            return reviews;
-        } else {
-            String sql = "SELECT * FROM reviews ORDER BY useful DESC ";
-            List<Review> reviews = jdbcTemplate.query(sql, reviewRowMapper);
-            return reviews
-                    .stream()
-                    .limit(count)
-                    .collect(Collectors.toList());
+            conditions.add("id_film = ?");
+            args.add(filmId);
+        }
+        if (afterId != null) {
+            conditions.add("(useful < ? OR (useful = ? AND id > ?))");
+            args.addAll(List.of(afterUseful, afterUseful, afterId));
         }
+        args.add(limit);
+
+        String where = conditions.isEmpty() ? "" : "WHERE " + String.join(" AND ", conditions) + " ";
+        String sql = "SELECT * FROM reviews " + where + "ORDER BY useful DESC, id LIMIT ?";
+
+        return jdbcTemplate.query(sql, reviewRowMapper, args.toArray());
+    }
+
+    /**
+     * Records a like of the user, replacing their dislike if there was one.
+     *
+     * @return the resulting change of the review usefulness, {@code 0} if the like was already recorded
+     */
+    @Transactional
+    public int addLike(Integer reviewId, Integer userId) {
+        return react(reviewId, userId, true);
+    }
+
+    /**
+     * Records a dislike of the user, replacing their like if there was one.
+     *
+     * @return the resulting change of the review usefulness, {@code 0} if the dislike was already recorded
+     */
+    @Transactional
+    public int addDislike(Integer reviewId, Integer userId) {
+        return react(reviewId, userId, false);
     }
 
-    public void addLike(Integer reviewId, Integer userId) {
-        String sql = "UPDATE reviews SET useful = useful + 1 WHERE id = ?";
-        jdbcTemplate.update(sql, reviewId);
+    /**
+     * Removes the like of the user, if any.
+     *
+     * @return the resulting change of the review usefulness
+     */
+    public int deleteLike(Integer reviewId, Integer userId) {
+        return removeReaction(reviewId, userId, true);
     }
 
-    public void addDislike(Integer reviewId, Integer userId) {
-        String sql = "UPDATE reviews SET useful = useful-1 WHERE id = ?";
-        jdbcTemplate.update(sql, reviewId);
+    /**
+     * Removes the dislike of the user, if any.
+     *
+     * @return the resulting change of the review usefulness
+     */
+    public int deleteDislike(Integer reviewId, Integer userId) {
+        return removeReaction(reviewId, userId, false);
     }
 
-    public void deleteLike(Integer reviewId, Integer userId) {
-        String sql1 = "UPDATE reviews SET useful -= ? WHERE id = ?";
-        jdbcTemplate.update(sql1, reviewId);
+    /**
+     * Adds the accumulated usefulness changes to the stored values in one batch.
+     */
+    public void applyUsefulDeltas(Map<Integer, Long> deltas) {
+        String sql = "UPDATE reviews SET useful = useful + ? WHERE id = ?";
+
+        jdbcTemplate.batchUpdate(sql, deltas.entrySet().stream()
+                .map(delta -> new Object[]{delta.getValue(), delta.getKey()})
+                .collect(Collectors.toList()));
+    }
+
+    private int react(int reviewId, int userId, boolean like) {
+        int sign = like ? 1 : -1;
+
+        try {
+            if (jdbcTemplate.update(SWITCH_REACTION_SQL, like, reviewId, userId, like) > 0) {
+                return 2 * sign;
+            }
+            return jdbcTemplate.update(MERGE_REACTION_SQL, reviewId, userId, like) > 0 ? sign : 0;
+        } catch (DuplicateKeyException e) {
+            return 0;
+        } catch (DataIntegrityViolationException e) {
+            throw new NotFoundException(String.format("Review with id: %d or user with id: %d not found",
+                    reviewId, userId));
+        }
     }
 
-    public void deleteDislike(Integer reviewId, Integer userId) {
-        String sql1 = "UPDATE reviews SET useful = (useful + 1) WHERE id = ?";
-        jdbcTemplate.update(sql1, reviewId);
+    private int removeReaction(int reviewId, int userId, boolean like) {
+        String sql = "DELETE FROM review_reactions WHERE id_review = ? AND id_user = ? AND is_like = ?";
+
+        return jdbcTemplate.update(sql, reviewId, userId, like) > 0 ? (like ? -1 : 1) : 0;
     }
 }
@@ -2,28 +2,39 @@ package ru.yandex.practicum.filmorate.storage.dao;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.storage.event.FriendEvent;
+import ru.yandex.practicum.filmorate.storage.event.LikeEvent;
+import ru.yandex.practicum.filmorate.storage.event.UserEvent;
 
 import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 
+import static ru.yandex.practicum.filmorate.model.enums.Operation.REMOVE;
+
 @Component
 @Slf4j
 @RequiredArgsConstructor
 public class UsersDao implements UserStorage {
 
     private final JdbcTemplate jdbcTemplate;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Override
     public List<User> findAll() {
@@ -32,6 +43,34 @@ public class UsersDao implements UserStorage {
         return jdbcTemplate.query(sql, (rs, rowNum) -> makeUser(rs));
     }
 
+    @Override
+    public RoaringBitmap findAllIds() {
+        RoaringBitmap ids = new RoaringBitmap();
+        jdbcTemplate.query("SELECT id FROM users", rs -> {
+            ids.add(rs.getInt("id"));
+        });
+        return ids;
+    }
+
+    @Override
+    public List<User> findPage(int afterId, int limit) {
+        String sql = "SELECT * FROM users WHERE id > ? ORDER BY id LIMIT ?";
+
+        return jdbcTemplate.query(sql, (rs, rowNum) -> makeUser(rs), afterId, limit);
+    }
+
+    @Override
+    public List<User> findByIds(int[] ids) {
+        if (ids.length == 0) {
+            return List.of();
+        }
+
+        String sql = "SELECT * FROM users WHERE id IN (" + String.join(", ", Collections.nCopies(ids.length, "?")) +
+                ") ORDER BY id";
+
+        return jdbcTemplate.query(sql, (rs, rowNum) -> makeUser(rs), Arrays.stream(ids).boxed().toArray());
+    }
+
     @Override
     public User create(User user) {
         String sql = "INSERT INTO users(email, login, name, birthday) " +
@@ -82,10 +121,24 @@ public class UsersDao implements UserStorage {
     }
 
     @Override
+    @Transactional
     public void deleteById(Integer id) {
         log.info("Request to delete user with id: {}", id);
+        List<Integer> likedFilms = jdbcTemplate.queryForList(
+                "SELECT id_film FROM likes_by_users WHERE id_user = ?", Integer.class, id);
+        List<FriendEvent> friendships = jdbcTemplate.query(
+                "SELECT id_user, id_friend FROM friends WHERE id_user = ? OR id_friend = ?",
+                (rs, rowNum) -> new FriendEvent(rs.getInt("id_user"), rs.getInt("id_friend"), REMOVE), id, id);
+
+        jdbcTemplate.update("UPDATE films SET likes_count = likes_count - 1 " +
+                "WHERE id IN (SELECT id_film FROM likes_by_users WHERE id_user = ?)", id);
+
         String sql = "DELETE FROM users where id = ?";
         jdbcTemplate.update(sql, id);
+
+        likedFilms.forEach(filmId -> eventPublisher.publishEvent(new LikeEvent(filmId, id, REMOVE)));
+        friendships.forEach(eventPublisher::publishEvent);
+        eventPublisher.publishEvent(new UserEvent(id, REMOVE));
     }
 
     public User makeUser(ResultSet rs) throws SQLException {
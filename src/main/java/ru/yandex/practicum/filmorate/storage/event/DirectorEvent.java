@@ -0,0 +1,16 @@
+package ru.yandex.practicum.filmorate.storage.event;
+
+import lombok.Value;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.enums.Operation;
+
+/**
+ * Published by {@code DirectorDao} after a director was created, updated or deleted.
+ * For {@link Operation#REMOVE} the director is {@code null}.
+ */
+@Value
+public class DirectorEvent {
+    int directorId;
+    Operation operation;
+    Director director;
+}
@@ -0,0 +1,14 @@
+package ru.yandex.practicum.filmorate.storage.event;
+
+import lombok.Value;
+import ru.yandex.practicum.filmorate.model.Feed;
+
+import java.util.List;
+
+/**
+ * Published after feed events were stored; the events carry their generated ids.
+ */
+@Value
+public class FeedEvent {
+    List<Feed> events;
+}
@@ -0,0 +1,16 @@
+package ru.yandex.practicum.filmorate.storage.event;
+
+import lombok.Value;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.enums.Operation;
+
+/**
+ * Published by {@code FilmsDao} after a film was created, updated or deleted.
+ * For {@link Operation#REMOVE} the film is {@code null}.
+ */
+@Value
+public class FilmEvent {
+    int filmId;
+    Operation operation;
+    Film film;
+}
@@ -0,0 +1,15 @@
+package ru.yandex.practicum.filmorate.storage.event;
+
+import lombok.Value;
+import ru.yandex.practicum.filmorate.model.enums.Operation;
+
+/**
+ * Published after a row of {@code friends} was actually inserted or deleted,
+ * including the friendships removed together with a deleted user.
+ */
+@Value
+public class FriendEvent {
+    int userId;
+    int friendId;
+    Operation operation;
+}
@@ -0,0 +1,15 @@
+package ru.yandex.practicum.filmorate.storage.event;
+
+import lombok.Value;
+import ru.yandex.practicum.filmorate.model.enums.Operation;
+
+/**
+ * Published after a row of {@code likes_by_users} was actually inserted or deleted,
+ * including the likes removed together with a deleted user.
+ */
+@Value
+public class LikeEvent {
+    int filmId;
+    int userId;
+    Operation operation;
+}
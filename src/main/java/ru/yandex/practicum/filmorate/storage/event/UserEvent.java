@@ -0,0 +1,13 @@
+package ru.yandex.practicum.filmorate.storage.event;
+
+import lombok.Value;
+import ru.yandex.practicum.filmorate.model.enums.Operation;
+
+/**
+ * Published by {@code UsersDao} after a user was deleted together with everything cascading from it.
+ */
+@Value
+public class UserEvent {
+    int userId;
+    Operation operation;
+}
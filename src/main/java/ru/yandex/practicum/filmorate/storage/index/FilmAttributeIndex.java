@@ -0,0 +1,287 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.dto.FilmFilter;
+import ru.yandex.practicum.filmorate.storage.event.DirectorEvent;
+import ru.yandex.practicum.filmorate.storage.event.FilmEvent;
+
+import javax.annotation.PostConstruct;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static java.util.stream.Collectors.toList;
+import static ru.yandex.practicum.filmorate.model.enums.Operation.REMOVE;
+
+/**
+ * Columnar attribute store over {@code films}, {@code film_genres} and {@code film_directors} for /films/browse.
+ * <p>
+ * Every genre, MPA rating, director and release year has a bitmap of its films, so a combination of filters is an
+ * AND of a few bitmaps (a year range ORs the buckets it spans) and a facet count is the cardinality of an AND.
+ * Facets are counted disjunctively: the counts of an attribute apply every filter except the one on that attribute,
+ * so a filter UI can show what each alternative value would select. Films are also kept presorted by release date.
+ */
+@Slf4j
+@Component
+public class FilmAttributeIndex {
+
+    private static final String GENRE = "genre";
+    private static final String MPA = "mpa";
+    private static final String DIRECTOR = "director";
+    private static final String YEAR = "year";
+
+    private static final Comparator<Attributes> BY_RELEASE = Comparator.comparing(Attributes::getReleaseDate,
+            Comparator.nullsLast(Comparator.<LocalDate>naturalOrder())).thenComparingInt(Attributes::getFilmId);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Integer, Attributes> films = new HashMap<>();
+    private final RoaringBitmap all = new RoaringBitmap();
+    private final Map<Integer, RoaringBitmap> byGenre = new HashMap<>();
+    private final Map<Integer, RoaringBitmap> byMpa = new HashMap<>();
+    private final Map<Integer, RoaringBitmap> byDirector = new HashMap<>();
+    private final NavigableMap<Integer, RoaringBitmap> byYear = new TreeMap<>();
+    private final NavigableSet<Attributes> byRelease = new TreeSet<>(BY_RELEASE);
+
+    public FilmAttributeIndex(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        Map<Integer, List<Integer>> genres = new HashMap<>();
+        jdbcTemplate.query("SELECT id_film, id_genre FROM film_genres", rs -> {
+            genres.computeIfAbsent(rs.getInt("id_film"), id -> new ArrayList<>()).add(rs.getInt("id_genre"));
+        });
+        Map<Integer, List<Integer>> directors = new HashMap<>();
+        jdbcTemplate.query("SELECT film_id, director_id FROM film_directors", rs -> {
+            directors.computeIfAbsent(rs.getInt("film_id"), id -> new ArrayList<>()).add(rs.getInt("director_id"));
+        });
+        List<Attributes> loaded = new ArrayList<>();
+        jdbcTemplate.query("SELECT id, releasedate, mpa FROM films", rs -> {
+            int filmId = rs.getInt("id");
+            loaded.add(new Attributes(filmId,
+                    rs.getObject("releasedate", LocalDate.class),
+                    rs.getObject("mpa") == null ? null : rs.getInt("mpa"),
+                    toArray(genres.getOrDefault(filmId, List.of())),
+                    toArray(directors.getOrDefault(filmId, List.of()))));
+        });
+
+        lock.writeLock().lock();
+        try {
+            films.clear();
+            all.clear();
+            byGenre.clear();
+            byMpa.clear();
+            byDirector.clear();
+            byYear.clear();
+            byRelease.clear();
+            loaded.forEach(this::insert);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Attribute index rebuilt for {} films", loaded.size());
+    }
+
+    /**
+     * Returns the films matching every filter and the facet counts of the selection.
+     */
+    public Selection select(FilmFilter filter) {
+        lock.readLock().lock();
+        try {
+            RoaringBitmap genre = filter.getGenre() == null ? null : bitmapOf(byGenre, filter.getGenre());
+            RoaringBitmap mpa = filter.getMpa() == null ? null : bitmapOf(byMpa, filter.getMpa());
+            RoaringBitmap director = filter.getDirector() == null ? null : bitmapOf(byDirector, filter.getDirector());
+            RoaringBitmap year = filter.getYearFrom() == null && filter.getYearTo() == null ? null : yearRange(
+                    filter.getYearFrom() == null ? Integer.MIN_VALUE : filter.getYearFrom(),
+                    filter.getYearTo() == null ? Integer.MAX_VALUE : filter.getYearTo());
+
+            Map<String, Map<Integer, Integer>> facets = new LinkedHashMap<>();
+            facets.put(GENRE, count(byGenre, and(mpa, director, year)));
+            facets.put(MPA, count(byMpa, and(genre, director, year)));
+            facets.put(DIRECTOR, count(byDirector, and(genre, mpa, year)));
+            facets.put(YEAR, count(byYear, and(genre, mpa, director)));
+
+            return new Selection(and(genre, mpa, director, year), facets);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns ids of the first {@code count} of the given films in release date order, undated films last.
+     */
+    public List<Integer> sortByRelease(RoaringBitmap among, int count) {
+        lock.readLock().lock();
+        try {
+            return Selections.first(among, count, byRelease, BY_RELEASE, films::get, Attributes::getFilmId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onFilm(FilmEvent event) {
+        lock.writeLock().lock();
+        try {
+            Attributes previous = films.get(event.getFilmId());
+            if (previous != null) {
+                remove(previous);
+            }
+            if (event.getOperation() != REMOVE) {
+                insert(Attributes.of(event.getFilm()));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDirector(DirectorEvent event) {
+        if (event.getOperation() != REMOVE) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            RoaringBitmap directed = byDirector.get(event.getDirectorId());
+            if (directed != null) {
+                directed.clone().forEach((int filmId) -> {
+                    Attributes previous = films.get(filmId);
+                    remove(previous);
+                    insert(previous.withoutDirector(event.getDirectorId()));
+                });
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private RoaringBitmap yearRange(int from, int to) {
+        if (from > to) {
+            return new RoaringBitmap();
+        }
+        return RoaringBitmap.or(byYear.subMap(from, true, to, true).values().iterator());
+    }
+
+    private RoaringBitmap and(RoaringBitmap... filters) {
+        RoaringBitmap result = all;
+
+        for (RoaringBitmap filter : filters) {
+            if (filter != null) {
+                result = RoaringBitmap.and(result, filter);
+            }
+        }
+        return result == all ? all.clone() : result;
+    }
+
+    private static Map<Integer, Integer> count(Map<Integer, RoaringBitmap> values, RoaringBitmap selection) {
+        Map<Integer, Integer> counts = new TreeMap<>();
+
+        values.forEach((value, films) -> {
+            int count = RoaringBitmap.andCardinality(films, selection);
+            if (count > 0) {
+                counts.put(value, count);
+            }
+        });
+        return counts;
+    }
+
+    private static RoaringBitmap bitmapOf(Map<Integer, RoaringBitmap> values, int value) {
+        return values.getOrDefault(value, new RoaringBitmap());
+    }
+
+    private void insert(Attributes attributes) {
+        int filmId = attributes.getFilmId();
+
+        films.put(filmId, attributes);
+        all.add(filmId);
+        byRelease.add(attributes);
+        if (attributes.getMpa() != null) {
+            byMpa.computeIfAbsent(attributes.getMpa(), id -> new RoaringBitmap()).add(filmId);
+        }
+        if (attributes.getReleaseDate() != null) {
+            byYear.computeIfAbsent(attributes.getReleaseDate().getYear(), y -> new RoaringBitmap()).add(filmId);
+        }
+        for (int genre : attributes.getGenres()) {
+            byGenre.computeIfAbsent(genre, id -> new RoaringBitmap()).add(filmId);
+        }
+        for (int director : attributes.getDirectors()) {
+            byDirector.computeIfAbsent(director, id -> new RoaringBitmap()).add(filmId);
+        }
+    }
+
+    private void remove(Attributes attributes) {
+        int filmId = attributes.getFilmId();
+
+        films.remove(filmId);
+        all.remove(filmId);
+        byRelease.remove(attributes);
+        if (attributes.getMpa() != null) {
+            removeFrom(byMpa, attributes.getMpa(), filmId);
+        }
+        if (attributes.getReleaseDate() != null) {
+            removeFrom(byYear, attributes.getReleaseDate().getYear(), filmId);
+        }
+        for (int genre : attributes.getGenres()) {
+            removeFrom(byGenre, genre, filmId);
+        }
+        for (int director : attributes.getDirectors()) {
+            removeFrom(byDirector, director, filmId);
+        }
+    }
+
+    private static void removeFrom(Map<Integer, RoaringBitmap> values, int value, int filmId) {
+        RoaringBitmap bitmap = values.get(value);
+
+        if (bitmap != null) {
+            bitmap.remove(filmId);
+            if (bitmap.isEmpty()) {
+                values.remove(value);
+            }
+        }
+    }
+
+    private static int[] toArray(List<Integer> ids) {
+        return ids.stream().mapToInt(Integer::intValue).distinct().toArray();
+    }
+
+    @Value
+    public static class Selection {
+        RoaringBitmap films;
+        Map<String, Map<Integer, Integer>> facets;
+    }
+
+    @Value
+    private static class Attributes {
+        int filmId;
+        LocalDate releaseDate;
+        Integer mpa;
+        int[] genres;
+        int[] directors;
+
+        static Attributes of(Film film) {
+            return new Attributes(film.getId(),
+                    film.getReleaseDate(),
+                    film.getMpa() == null ? null : film.getMpa().getId(),
+                    film.getGenres() == null ? new int[0] :
+                            film.getGenres().stream().mapToInt(Genre::getId).distinct().toArray(),
+                    film.getDirectors() == null ? new int[0] :
+                            film.getDirectors().stream().mapToInt(Director::getId).distinct().toArray());
+        }
+
+        Attributes withoutDirector(int directorId) {
+            return new Attributes(filmId, releaseDate, mpa, genres,
+                    Arrays.stream(directors).filter(id -> id != directorId).toArray());
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.event.DirectorEvent;
+import ru.yandex.practicum.filmorate.storage.event.FilmEvent;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static java.util.stream.Collectors.toList;
+import static ru.yandex.practicum.filmorate.model.enums.Operation.REMOVE;
+
+/**
+ * Trigram inverted index over film titles and director names for case-insensitive substring search.
+ * <p>
+ * A query of three or more characters is answered by intersecting the posting lists of its trigrams and then
+ * checking the surviving candidates with {@link String#contains}, so only a handful of strings are ever compared.
+ * Shorter queries fall back to checking every entry. Matches are ordered by likes descending, newest film first.
+ */
+@Slf4j
+@Component
+public class FilmSearchIndex {
+
+    private static final int GRAM = 3;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PopularityIndex popularityIndex;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Integer, String> titles = new HashMap<>();
+    private final Map<Integer, String> directorNames = new HashMap<>();
+    private final Map<Integer, RoaringBitmap> filmsByDirector = new HashMap<>();
+    private final Map<Integer, RoaringBitmap> directorsByFilm = new HashMap<>();
+    private final Map<String, RoaringBitmap> titleGrams = new HashMap<>();
+    private final Map<String, RoaringBitmap> directorGrams = new HashMap<>();
+
+    public FilmSearchIndex(JdbcTemplate jdbcTemplate, PopularityIndex popularityIndex) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.popularityIndex = popularityIndex;
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        lock.writeLock().lock();
+        try {
+            titles.clear();
+            directorNames.clear();
+            filmsByDirector.clear();
+            directorsByFilm.clear();
+            titleGrams.clear();
+            directorGrams.clear();
+
+            jdbcTemplate.query("SELECT id, name FROM films", rs -> {
+                putTitle(rs.getInt("id"), rs.getString("name"));
+            });
+            jdbcTemplate.query("SELECT id, name FROM directors", rs -> {
+                putDirectorName(rs.getInt("id"), rs.getString("name"));
+            });
+            jdbcTemplate.query("SELECT film_id, director_id FROM film_directors", rs -> {
+                link(rs.getInt("film_id"), rs.getInt("director_id"));
+            });
+
+            log.info("Search index rebuilt for {} films and {} directors", titles.size(), directorNames.size());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public List<Integer> searchByTitle(String query) {
+        lock.readLock().lock();
+        try {
+            return rank(matchTitles(query.toLowerCase()));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<Integer> searchByDirector(String query) {
+        lock.readLock().lock();
+        try {
+            return rank(matchDirectors(query.toLowerCase()));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<Integer> searchByTitleAndDirector(String query) {
+        lock.readLock().lock();
+        try {
+            String text = query.toLowerCase();
+            return rank(RoaringBitmap.or(matchTitles(text), matchDirectors(text)));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onFilm(FilmEvent event) {
+        lock.writeLock().lock();
+        try {
+            int filmId = event.getFilmId();
+
+            removeTitle(filmId);
+            RoaringBitmap directors = directorsByFilm.remove(filmId);
+            if (directors != null) {
+                directors.forEach((int directorId) -> unlink(filmId, directorId));
+            }
+
+            if (event.getOperation() != REMOVE) {
+                Film film = event.getFilm();
+                putTitle(filmId, film.getName());
+                if (film.getDirectors() != null) {
+                    film.getDirectors().forEach(director -> link(filmId, director.getId()));
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDirector(DirectorEvent event) {
+        lock.writeLock().lock();
+        try {
+            int directorId = event.getDirectorId();
+
+            removeDirectorName(directorId);
+            if (event.getOperation() == REMOVE) {
+                RoaringBitmap films = filmsByDirector.remove(directorId);
+                if (films != null) {
+                    films.forEach((int filmId) -> removeFrom(directorsByFilm, filmId, directorId));
+                }
+            } else {
+                Director director = event.getDirector();
+                putDirectorName(directorId, director.getName());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private RoaringBitmap matchTitles(String text) {
+        RoaringBitmap matches = new RoaringBitmap();
+
+        candidates(titleGrams, text, titles.keySet()).forEach((int filmId) -> {
+            if (titles.get(filmId).contains(text)) {
+                matches.add(filmId);
+            }
+        });
+        return matches;
+    }
+
+    private RoaringBitmap matchDirectors(String text) {
+        RoaringBitmap directors = candidates(directorGrams, text, directorNames.keySet());
+        RoaringBitmap films = new RoaringBitmap();
+
+        directors.forEach((int directorId) -> {
+            RoaringBitmap directed = filmsByDirector.get(directorId);
+            if (directed != null && directorNames.get(directorId).contains(text)) {
+                films.or(directed);
+            }
+        });
+        return films;
+    }
+
+    private static RoaringBitmap candidates(Map<String, RoaringBitmap> postings, String text, Set<Integer> all) {
+        if (text.length() < GRAM) {
+            RoaringBitmap everything = new RoaringBitmap();
+            all.forEach(everything::add);
+            return everything;
+        }
+
+        List<RoaringBitmap> lists = new ArrayList<>();
+        for (String gram : grams(text)) {
+            RoaringBitmap list = postings.get(gram);
+            if (list == null) {
+                return new RoaringBitmap();
+            }
+            lists.add(list);
+        }
+        return FastAggregation.and(lists.iterator());
+    }
+
+    private List<Integer> rank(RoaringBitmap films) {
+        List<Integer> ids = new ArrayList<>(films.getCardinality());
+        films.forEach((int filmId) -> ids.add(filmId));
+
+        Map<Integer, Integer> likes = new HashMap<>();
+        ids.forEach(id -> likes.put(id, popularityIndex.getLikes(id)));
+
+        return ids.stream()
+                .sorted(Comparator.comparing((Integer id) -> likes.get(id)).reversed()
+                        .thenComparing(Comparator.<Integer>reverseOrder()))
+                .collect(toList());
+    }
+
+    private void putTitle(int filmId, String title) {
+        String text = title.toLowerCase();
+        titles.put(filmId, text);
+        grams(text).forEach(gram -> titleGrams.computeIfAbsent(gram, g -> new RoaringBitmap()).add(filmId));
+    }
+
+    private void removeTitle(int filmId) {
+        String text = titles.remove(filmId);
+        if (text != null) {
+            grams(text).forEach(gram -> removeFrom(titleGrams, gram, filmId));
+        }
+    }
+
+    private void putDirectorName(int directorId, String name) {
+        String text = name.toLowerCase();
+        directorNames.put(directorId, text);
+        grams(text).forEach(gram -> directorGrams.computeIfAbsent(gram, g -> new RoaringBitmap()).add(directorId));
+    }
+
+    private void removeDirectorName(int directorId) {
+        String text = directorNames.remove(directorId);
+        if (text != null) {
+            grams(text).forEach(gram -> removeFrom(directorGrams, gram, directorId));
+        }
+    }
+
+    private void link(int filmId, int directorId) {
+        filmsByDirector.computeIfAbsent(directorId, id -> new RoaringBitmap()).add(filmId);
+        directorsByFilm.computeIfAbsent(filmId, id -> new RoaringBitmap()).add(directorId);
+    }
+
+    private void unlink(int filmId, int directorId) {
+        removeFrom(filmsByDirector, directorId, filmId);
+    }
+
+    private static Set<String> grams(String text) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM <= text.length(); i++) {
+            grams.add(text.substring(i, i + GRAM));
+        }
+        return grams;
+    }
+
+    private static <K> void removeFrom(Map<K, RoaringBitmap> postings, K key, int value) {
+        RoaringBitmap bitmap = postings.get(key);
+
+        if (bitmap != null) {
+            bitmap.remove(value);
+            if (bitmap.isEmpty()) {
+                postings.remove(key);
+            }
+        }
+    }
+}
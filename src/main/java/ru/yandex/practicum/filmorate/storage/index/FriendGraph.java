@@ -0,0 +1,308 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.yandex.practicum.filmorate.model.FriendGraphStats;
+import ru.yandex.practicum.filmorate.storage.event.FriendEvent;
+
+import javax.annotation.PostConstruct;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static ru.yandex.practicum.filmorate.model.enums.Operation.ADD;
+
+/**
+ * Adjacency store of the {@code friends} table: for every user, the ids of their friends as a sorted {@code int}
+ * array.
+ * <p>
+ * Arrays are never modified in place: a change replaces the user's array with an updated copy, so reads need no
+ * locking and only writers are serialized. Common friends are found by a linear merge of two arrays.
+ * <p>
+ * Friend suggestions walk two hops from the user, counting mutual friends of every candidate in a primitive
+ * open-addressing map, and keep the best ones in a bounded heap. The walk stops after {@code max-edges} edges,
+ * so a user with very popular friends gets a partial but fast answer.
+ */
+@Slf4j
+@Component
+public class FriendGraph {
+
+    private static final int[] NO_FRIENDS = new int[0];
+    private static final long ENTRY_BYTES = 32 + 16;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int maxEdges;
+
+    private final Map<Integer, int[]> friends = new ConcurrentHashMap<>();
+
+    public FriendGraph(JdbcTemplate jdbcTemplate,
+                       @Value("${filmorate.friends.suggestions.max-edges:100000}") int maxEdges) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.maxEdges = maxEdges;
+    }
+
+    @PostConstruct
+    public synchronized void rebuild() {
+        friends.clear();
+
+        jdbcTemplate.query("SELECT id_user, id_friend FROM friends ORDER BY id_user, id_friend",
+                (ResultSetExtractor<Void>) rs -> {
+                    int user = 0;
+                    int size = 0;
+                    int[] buffer = new int[64];
+
+                    while (rs.next()) {
+                        int id = rs.getInt("id_user");
+                        if (id != user && size > 0) {
+                            friends.put(user, Arrays.copyOf(buffer, size));
+                            size = 0;
+                        }
+                        if (size == buffer.length) {
+                            buffer = Arrays.copyOf(buffer, size * 2);
+                        }
+                        user = id;
+                        buffer[size++] = rs.getInt("id_friend");
+                    }
+                    if (size > 0) {
+                        friends.put(user, Arrays.copyOf(buffer, size));
+                    }
+                    return null;
+                });
+
+        FriendGraphStats stats = getStats();
+        log.info("Friend graph rebuilt: {} users, {} edges, about {} bytes per edge",
+                stats.getUsers(), stats.getEdges(), Math.round(stats.getBytesPerEdge()));
+    }
+
+    /**
+     * Returns the sorted ids of the user's friends. The array is shared and must not be modified.
+     */
+    public int[] getFriends(int userId) {
+        return friends.getOrDefault(userId, NO_FRIENDS);
+    }
+
+    /**
+     * Returns the sorted ids of users who are friends of both users.
+     */
+    public int[] getCommonFriends(int userId, int otherId) {
+        int[] a = getFriends(userId);
+        int[] b = getFriends(otherId);
+        int[] common = new int[Math.min(a.length, b.length)];
+        int size = 0;
+
+        for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                common[size++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(common, size);
+    }
+
+    /**
+     * Returns up to {@code limit} ids of friends of the user's friends who are not the user's friends yet, ordered
+     * by the number of mutual friends descending and then by id.
+     */
+    public int[] suggest(int userId, int limit) {
+        int[] direct = getFriends(userId);
+        MutualCounts counts = new MutualCounts();
+        long scanned = 0;
+
+        walk:
+        for (int friend : direct) {
+            for (int candidate : getFriends(friend)) {
+                if (++scanned > maxEdges) {
+                    log.debug("Friend suggestions for user {} stopped after {} edges", userId, maxEdges);
+                    break walk;
+                }
+                if (candidate != userId && Arrays.binarySearch(direct, candidate) < 0) {
+                    counts.increment(candidate);
+                }
+            }
+        }
+        return counts.top(limit);
+    }
+
+    public FriendGraphStats getStats() {
+        long edges = 0;
+        long bytes = 0;
+
+        for (int[] list : friends.values()) {
+            edges += list.length;
+            bytes += ENTRY_BYTES + align(16 + 4L * list.length);
+        }
+
+        return FriendGraphStats.builder()
+                .users(friends.size())
+                .edges(edges)
+                .estimatedBytes(bytes)
+                .bytesPerEdge(edges == 0 ? 0 : (double) bytes / edges)
+                .build();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onFriend(FriendEvent event) {
+        int friendId = event.getFriendId();
+
+        if (event.getOperation() == ADD) {
+            friends.compute(event.getUserId(), (id, list) -> insert(list == null ? NO_FRIENDS : list, friendId));
+        } else {
+            friends.computeIfPresent(event.getUserId(), (id, list) -> {
+                int[] updated = delete(list, friendId);
+                return updated.length == 0 ? null : updated;
+            });
+        }
+    }
+
+    private static int[] insert(int[] list, int value) {
+        int position = Arrays.binarySearch(list, value);
+        if (position >= 0) {
+            return list;
+        }
+
+        position = -position - 1;
+        int[] updated = new int[list.length + 1];
+        System.arraycopy(list, 0, updated, 0, position);
+        updated[position] = value;
+        System.arraycopy(list, position, updated, position + 1, list.length - position);
+        return updated;
+    }
+
+    private static int[] delete(int[] list, int value) {
+        int position = Arrays.binarySearch(list, value);
+        if (position < 0) {
+            return list;
+        }
+
+        int[] updated = new int[list.length - 1];
+        System.arraycopy(list, 0, updated, 0, position);
+        System.arraycopy(list, position + 1, updated, position, list.length - position - 1);
+        return updated;
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) / 8 * 8;
+    }
+
+    /**
+     * Open-addressing {@code int -> int} counter; keys are positive ids, so {@code 0} marks a free slot.
+     */
+    private static class MutualCounts {
+        private int[] keys = new int[64];
+        private int[] counts = new int[64];
+        private int size;
+
+        private void increment(int key) {
+            int slot = find(keys, key);
+            if (keys[slot] == 0) {
+                keys[slot] = key;
+                if (++size * 2 > keys.length) {
+                    grow();
+                    slot = find(keys, key);
+                }
+            }
+            counts[slot]++;
+        }
+
+        /**
+         * Selects the best {@code limit} keys with a min-heap of {@code count << 32 | ~id} packed longs.
+         */
+        private int[] top(int limit) {
+            long[] heap = new long[Math.min(limit, size)];
+            int length = 0;
+
+            for (int slot = 0; slot < keys.length && heap.length > 0; slot++) {
+                if (keys[slot] == 0) {
+                    continue;
+                }
+
+                long packed = (long) counts[slot] << 32 | (Integer.MAX_VALUE - keys[slot]);
+                if (length < heap.length) {
+                    heap[length] = packed;
+                    siftUp(heap, length++);
+                } else if (packed > heap[0]) {
+                    heap[0] = packed;
+                    siftDown(heap, 0, length);
+                }
+            }
+
+            Arrays.sort(heap);
+            int[] ids = new int[heap.length];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = Integer.MAX_VALUE - (int) heap[heap.length - 1 - i];
+            }
+            return ids;
+        }
+
+        private void grow() {
+            int[] oldKeys = keys;
+            int[] oldCounts = counts;
+            keys = new int[oldKeys.length * 2];
+            counts = new int[oldKeys.length * 2];
+
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    int slot = find(keys, oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    counts[slot] = oldCounts[i];
+                }
+            }
+        }
+
+        private static int find(int[] keys, int key) {
+            int mask = keys.length - 1;
+            int hash = key * 0x9E3779B9;
+            int slot = (hash ^ hash >>> 16) & mask;
+
+            while (keys[slot] != 0 && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private static void siftUp(long[] heap, int index) {
+            while (index > 0) {
+                int parent = (index - 1) / 2;
+                if (heap[parent] <= heap[index]) {
+                    return;
+                }
+                swap(heap, parent, index);
+                index = parent;
+            }
+        }
+
+        private static void siftDown(long[] heap, int index, int length) {
+            while (true) {
+                int smallest = index;
+                int left = 2 * index + 1;
+                int right = left + 1;
+                if (left < length && heap[left] < heap[smallest]) {
+                    smallest = left;
+                }
+                if (right < length && heap[right] < heap[smallest]) {
+                    smallest = right;
+                }
+                if (smallest == index) {
+                    return;
+                }
+                swap(heap, smallest, index);
+                index = smallest;
+            }
+        }
+
+        private static void swap(long[] heap, int i, int j) {
+            long value = heap[i];
+            heap[i] = heap[j];
+            heap[j] = value;
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.yandex.practicum.filmorate.storage.event.FilmEvent;
+import ru.yandex.practicum.filmorate.storage.event.LikeEvent;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
+
+import static java.util.stream.Collectors.toList;
+import static ru.yandex.practicum.filmorate.model.enums.Operation.ADD;
+import static ru.yandex.practicum.filmorate.model.enums.Operation.REMOVE;
+
+/**
+ * Likes kept in memory as compressed bitmaps: the films each user liked and the users who liked each film.
+ * <p>
+ * Recommendations compare a user with every user who shares at least one like, keep the {@code k} most similar
+ * neighbours and score the films they liked and the user did not, weighted by neighbour similarity.
+ */
+@Slf4j
+@Component
+public class LikesIndex {
+
+    private static final int PARALLEL_THRESHOLD = 2048;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int neighbours;
+    private final Similarity similarity;
+    private final long latencyBudgetNanos;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Integer, RoaringBitmap> filmsByUser = new HashMap<>();
+    private final Map<Integer, RoaringBitmap> usersByFilm = new HashMap<>();
+
+    public LikesIndex(JdbcTemplate jdbcTemplate,
+                      @Value("${filmorate.recommendations.neighbours:10}") int neighbours,
+                      @Value("${filmorate.recommendations.similarity:jaccard}") String similarity,
+                      @Value("${filmorate.recommendations.latency-budget:50ms}") Duration latencyBudget) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.neighbours = neighbours;
+        this.similarity = Similarity.valueOf(similarity.toUpperCase());
+        this.latencyBudgetNanos = latencyBudget.toNanos();
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        lock.writeLock().lock();
+        try {
+            filmsByUser.clear();
+            usersByFilm.clear();
+
+            jdbcTemplate.query("SELECT id_film, id_user FROM likes_by_users", rs -> {
+                add(rs.getInt("id_film"), rs.getInt("id_user"));
+            });
+
+            filmsByUser.values().forEach(RoaringBitmap::runOptimize);
+            usersByFilm.values().forEach(RoaringBitmap::runOptimize);
+            log.info("Likes index rebuilt for {} users and {} films", filmsByUser.size(), usersByFilm.size());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns a copy of the set of films the user liked.
+     */
+    public RoaringBitmap getFilmsLikedBy(int userId) {
+        lock.readLock().lock();
+        try {
+            RoaringBitmap films = filmsByUser.get(userId);
+            return films == null ? new RoaringBitmap() : films.clone();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getLikesCount(int filmId) {
+        lock.readLock().lock();
+        try {
+            RoaringBitmap users = usersByFilm.get(filmId);
+            return users == null ? 0 : users.getCardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns ids of all films that have at least one like.
+     */
+    public RoaringBitmap getLikedFilms() {
+        lock.readLock().lock();
+        try {
+            RoaringBitmap films = new RoaringBitmap();
+            usersByFilm.keySet().forEach(films::add);
+            return films;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns up to {@code limit} ids of films most often liked together with the given one, ordered by the number
+     * of shared likers descending and then by id.
+     */
+    public int[] getTopCoLiked(int filmId, int limit) {
+        lock.readLock().lock();
+        try {
+            RoaringBitmap likers = usersByFilm.get(filmId);
+            if (likers == null) {
+                return new int[0];
+            }
+
+            RoaringBitmap candidates = FastAggregation.or(likers.stream()
+                    .mapToObj(filmsByUser::get)
+                    .iterator());
+            candidates.remove(filmId);
+
+            long[] ranked = new long[candidates.getCardinality()];
+            int i = 0;
+            for (int candidate : candidates) {
+                long common = RoaringBitmap.andCardinality(likers, usersByFilm.get(candidate));
+                ranked[i++] = common << 32 | (Integer.MAX_VALUE - candidate);
+            }
+            Arrays.sort(ranked);
+
+            int size = Math.min(limit, ranked.length);
+            int[] top = new int[size];
+            for (int j = 0; j < size; j++) {
+                top[j] = Integer.MAX_VALUE - (int) ranked[ranked.length - 1 - j];
+            }
+            return top;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns ids of films liked by both users, ordered by the total number of likes descending and then by id.
+     */
+    public List<Integer> getCommonFilms(int userId, int otherId) {
+        lock.readLock().lock();
+        try {
+            RoaringBitmap liked = filmsByUser.get(userId);
+            RoaringBitmap otherLiked = filmsByUser.get(otherId);
+            if (liked == null || otherLiked == null) {
+                return List.of();
+            }
+
+            RoaringBitmap common = RoaringBitmap.and(liked, otherLiked);
+            long[] ranked = new long[common.getCardinality()];
+            int i = 0;
+            for (int filmId : common) {
+                ranked[i++] = (long) usersByFilm.get(filmId).getCardinality() << 32 | (Integer.MAX_VALUE - filmId);
+            }
+            Arrays.sort(ranked);
+
+            List<Integer> films = new ArrayList<>(ranked.length);
+            for (int j = ranked.length - 1; j >= 0; j--) {
+                films.add(Integer.MAX_VALUE - (int) ranked[j]);
+            }
+            return films;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns ids of films recommended to the user, best first.
+     */
+    public List<Integer> recommend(int userId) {
+        long start = System.nanoTime();
+
+        lock.readLock().lock();
+        try {
+            RoaringBitmap liked = filmsByUser.get(userId);
+            if (liked == null || liked.isEmpty()) {
+                return List.of();
+            }
+
+            List<Neighbour> nearest = findNeighbours(userId, liked);
+            Map<Integer, Double> scores = new HashMap<>();
+
+            for (Neighbour neighbour : nearest) {
+                RoaringBitmap.andNot(filmsByUser.get(neighbour.userId), liked)
+                        .forEach((int filmId) -> scores.merge(filmId, neighbour.similarity, Double::sum));
+            }
+
+            return scores.entrySet().stream()
+                    .sorted(Map.Entry.<Integer, Double>comparingByValue().reversed()
+                            .thenComparing(Map.Entry.comparingByKey()))
+                    .map(Map.Entry::getKey)
+                    .collect(toList());
+        } finally {
+            lock.readLock().unlock();
+
+            long elapsed = System.nanoTime() - start;
+            if (elapsed > latencyBudgetNanos) {
+                log.warn("Recommendations for user {} took {} ms", userId, elapsed / 1_000_000);
+            } else {
+                log.debug("Recommendations for user {} took {} us", userId, elapsed / 1_000);
+            }
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onLike(LikeEvent event) {
+        lock.writeLock().lock();
+        try {
+            if (event.getOperation() == ADD) {
+                add(event.getFilmId(), event.getUserId());
+            } else {
+                remove(event.getFilmId(), event.getUserId());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onFilm(FilmEvent event) {
+        if (event.getOperation() != REMOVE) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            RoaringBitmap users = usersByFilm.remove(event.getFilmId());
+            if (users != null) {
+                users.forEach((int userId) -> remove(event.getFilmId(), userId));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private List<Neighbour> findNeighbours(int userId, RoaringBitmap liked) {
+        RoaringBitmap candidates = FastAggregation.or(liked.stream()
+                .mapToObj(usersByFilm::get)
+                .filter(Objects::nonNull)
+                .iterator());
+        candidates.remove(userId);
+
+        IntStream ids = IntStream.of(candidates.toArray());
+        if (candidates.getCardinality() >= PARALLEL_THRESHOLD) {
+            ids = ids.parallel();
+        }
+
+        return ids.mapToObj(id -> new Neighbour(id, similarity.of(liked, filmsByUser.get(id))))
+                .filter(neighbour -> neighbour.similarity > 0)
+                .sorted(Comparator.comparingDouble((Neighbour neighbour) -> neighbour.similarity).reversed()
+                        .thenComparingInt(neighbour -> neighbour.userId))
+                .limit(neighbours)
+                .collect(toList());
+    }
+
+    private void add(int filmId, int userId) {
+        filmsByUser.computeIfAbsent(userId, id -> new RoaringBitmap()).add(filmId);
+        usersByFilm.computeIfAbsent(filmId, id -> new RoaringBitmap()).add(userId);
+    }
+
+    private void remove(int filmId, int userId) {
+        removeFrom(filmsByUser, userId, filmId);
+        removeFrom(usersByFilm, filmId, userId);
+    }
+
+    private static void removeFrom(Map<Integer, RoaringBitmap> bitmaps, int key, int value) {
+        RoaringBitmap bitmap = bitmaps.get(key);
+
+        if (bitmap != null) {
+            bitmap.remove(value);
+            if (bitmap.isEmpty()) {
+                bitmaps.remove(key);
+            }
+        }
+    }
+
+    private enum Similarity {
+        JACCARD {
+            @Override
+            double of(RoaringBitmap a, RoaringBitmap b) {
+                int common = RoaringBitmap.andCardinality(a, b);
+                return (double) common / (a.getCardinality() + b.getCardinality() - common);
+            }
+        },
+        COSINE {
+            @Override
+            double of(RoaringBitmap a, RoaringBitmap b) {
+                int common = RoaringBitmap.andCardinality(a, b);
+                return common / Math.sqrt((double) a.getCardinality() * b.getCardinality());
+            }
+        };
+
+        abstract double of(RoaringBitmap a, RoaringBitmap b);
+    }
+
+    private static class Neighbour {
+        private final int userId;
+        private final double similarity;
+
+        private Neighbour(int userId, double similarity) {
+            this.userId = userId;
+            this.similarity = similarity;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.storage.event.FilmEvent;
+import ru.yandex.practicum.filmorate.storage.event.LikeEvent;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static java.util.stream.Collectors.toList;
+import static ru.yandex.practicum.filmorate.model.enums.Operation.ADD;
+
+/**
+ * Films ranked by like count, kept in memory for /films/popular.
+ * <p>
+ * Every film is on the global board, on one board per genre, on the board of its release year
+ * and on one board per (genre, year) pair. A like moves the film on each of its boards in O(log n),
+ * so a top-N read walks exactly N entries of the requested board.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PopularityIndex {
+
+    private static final Comparator<Entry> BY_LIKES = Comparator.comparingInt(Entry::getLikes).reversed()
+            .thenComparingInt(Entry::getFilmId);
+    private static final BoardKey GLOBAL = new BoardKey(null, null);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Integer, Entry> films = new HashMap<>();
+    private final Map<BoardKey, NavigableSet<Entry>> boards = new HashMap<>();
+
+    @PostConstruct
+    public void rebuild() {
+        Map<Integer, Entry> loaded = new HashMap<>();
+
+        jdbcTemplate.query("SELECT id, EXTRACT(YEAR FROM releasedate) AS release_year, likes_count FROM films", rs -> {
+            Integer year = rs.getObject("release_year") == null ? null : rs.getInt("release_year");
+            loaded.put(rs.getInt("id"), new Entry(rs.getInt("id"), rs.getInt("likes_count"), year, new int[0]));
+        });
+
+        Map<Integer, List<Integer>> genres = new HashMap<>();
+        jdbcTemplate.query("SELECT id_film, id_genre FROM film_genres", rs -> {
+            genres.computeIfAbsent(rs.getInt("id_film"), id -> new ArrayList<>()).add(rs.getInt("id_genre"));
+        });
+
+        lock.writeLock().lock();
+        try {
+            films.clear();
+            boards.clear();
+            loaded.values().forEach(entry -> insert(entry.withGenres(genres.getOrDefault(entry.getFilmId(), List.of()))));
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Popularity index rebuilt for {} films", loaded.size());
+    }
+
+    /**
+     * Returns ids of the {@code count} most liked films matching the filters, most liked first.
+     */
+    public List<Integer> getTop(int count, Optional<Integer> genreId, Optional<Integer> year) {
+        lock.readLock().lock();
+        try {
+            NavigableSet<Entry> board = boards.get(new BoardKey(genreId.orElse(null), year.orElse(null)));
+
+            if (board == null) {
+                return List.of();
+            }
+            return board.stream().limit(count).map(Entry::getFilmId).collect(toList());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns ids of the {@code count} most liked films among the given ones, most liked first.
+     * A large selection is filtered while walking the global board, a small one is sorted directly.
+     */
+    public List<Integer> getTop(int count, RoaringBitmap among) {
+        lock.readLock().lock();
+        try {
+            NavigableSet<Entry> board = boards.getOrDefault(GLOBAL, Collections.emptyNavigableSet());
+            return Selections.first(among, count, board, BY_LIKES, films::get, Entry::getFilmId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getLikes(int filmId) {
+        lock.readLock().lock();
+        try {
+            Entry entry = films.get(filmId);
+            return entry == null ? 0 : entry.getLikes();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onLike(LikeEvent event) {
+        lock.writeLock().lock();
+        try {
+            Entry entry = films.get(event.getFilmId());
+
+            if (entry != null) {
+                int delta = event.getOperation() == ADD ? 1 : -1;
+                remove(entry);
+                insert(entry.withLikes(Math.max(0, entry.getLikes() + delta)));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onFilm(FilmEvent event) {
+        lock.writeLock().lock();
+        try {
+            Entry previous = films.get(event.getFilmId());
+            if (previous != null) {
+                remove(previous);
+            }
+
+            switch (event.getOperation()) {
+                case ADD:
+                    insert(Entry.of(event.getFilm(), 0));
+                    break;
+                case UPDATE:
+                    insert(Entry.of(event.getFilm(), previous == null ? 0 : previous.getLikes()));
+                    break;
+                default:
+                    break;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void insert(Entry entry) {
+        films.put(entry.getFilmId(), entry);
+
+        for (BoardKey key : entry.boardKeys()) {
+            boards.computeIfAbsent(key, k -> new TreeSet<>(BY_LIKES)).add(entry);
+        }
+    }
+
+    private void remove(Entry entry) {
+        films.remove(entry.getFilmId());
+
+        for (BoardKey key : entry.boardKeys()) {
+            NavigableSet<Entry> board = boards.get(key);
+            board.remove(entry);
+            if (board.isEmpty()) {
+                boards.remove(key);
+            }
+        }
+    }
+
+    @Value
+    private static class BoardKey {
+        Integer genreId;
+        Integer year;
+    }
+
+    @Value
+    private static class Entry {
+        int filmId;
+        int likes;
+        Integer year;
+        int[] genres;
+
+        static Entry of(Film film, int likes) {
+            Integer year = film.getReleaseDate() == null ? null : film.getReleaseDate().getYear();
+            int[] genres = film.getGenres() == null ? new int[0] :
+                    film.getGenres().stream().mapToInt(Genre::getId).distinct().toArray();
+            return new Entry(film.getId(), likes, year, genres);
+        }
+
+        Entry withLikes(int likes) {
+            return new Entry(filmId, likes, year, genres);
+        }
+
+        Entry withGenres(List<Integer> genreIds) {
+            return new Entry(filmId, likes, year, genreIds.stream().mapToInt(Integer::intValue).distinct().toArray());
+        }
+
+        List<BoardKey> boardKeys() {
+            List<BoardKey> keys = new ArrayList<>(2 + 2 * genres.length);
+            keys.add(GLOBAL);
+            if (year != null) {
+                keys.add(new BoardKey(null, year));
+            }
+            for (int genre : genres) {
+                keys.add(new BoardKey(genre, null));
+                if (year != null) {
+                    keys.add(new BoardKey(genre, year));
+                }
+            }
+            return keys;
+        }
+    }
+}
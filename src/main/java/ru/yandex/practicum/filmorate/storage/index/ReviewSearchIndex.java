@@ -0,0 +1,343 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.yandex.practicum.filmorate.model.Review;
+import ru.yandex.practicum.filmorate.storage.event.FilmEvent;
+import ru.yandex.practicum.filmorate.storage.event.UserEvent;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static ru.yandex.practicum.filmorate.model.enums.Operation.REMOVE;
+
+/**
+ * Inverted index over review content ranked with BM25.
+ * <p>
+ * Content is split into letter and digit runs, lower-cased, stripped of stop words and reduced by a light suffix
+ * stemmer for English and Russian, so "actors" finds "actor" and "актёры" finds "актёр". The query goes through
+ * the same analysis. Candidates are the union of the posting lists of the query terms, narrowed to one film when
+ * asked, and the BM25 score of each is multiplied by a usefulness boost of {@code 1 + weight * ln(1 + useful)}
+ * (reviews with negative usefulness are damped symmetrically, but never below half of their score).
+ */
+@Slf4j
+@Component
+public class ReviewSearchIndex {
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final int MIN_TERM_LENGTH = 2;
+    private static final int MIN_STEM_LENGTH = 3;
+
+    private static final Set<String> STOP_WORDS = Set.of(
+            "a", "an", "and", "are", "as", "at", "be", "but", "by", "for", "from", "has", "have", "he", "her",
+            "his", "i", "if", "in", "is", "it", "its", "me", "my", "not", "of", "on", "or", "she", "so", "that",
+            "the", "their", "them", "there", "they", "this", "to", "was", "we", "were", "what", "which", "who",
+            "will", "with", "you", "your",
+            "и", "в", "во", "не", "что", "он", "на", "я", "с", "со", "как", "а", "то", "все", "она", "так", "его",
+            "но", "да", "ты", "к", "у", "же", "вы", "за", "бы", "по", "только", "ее", "мне", "было", "вот", "от",
+            "меня", "еще", "нет", "о", "из", "ему", "для", "мы", "они", "это", "этот", "эта", "при", "или", "ли");
+    private static final List<String> RUSSIAN_SUFFIXES = List.of(
+            "ами", "ями", "ого", "его", "ому", "ему", "ыми", "ими", "иях", "ией",
+            "ах", "ях", "ов", "ев", "ом", "ем", "ой", "ей", "ий", "ый", "ая", "яя", "ое", "ее", "ые", "ие", "ую",
+            "юю", "ам", "ям", "а", "я", "ы", "и", "е", "о", "у", "ю", "ь");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final double usefulWeight;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Integer, Document> documents = new HashMap<>();
+    private final Map<String, RoaringBitmap> postings = new HashMap<>();
+    private final Map<Integer, RoaringBitmap> reviewsByFilm = new HashMap<>();
+    private long totalLength;
+
+    public ReviewSearchIndex(JdbcTemplate jdbcTemplate,
+                             @Value("${filmorate.reviews.search.useful-weight:0.1}") double usefulWeight) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.usefulWeight = usefulWeight;
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        lock.writeLock().lock();
+        try {
+            documents.clear();
+            postings.clear();
+            reviewsByFilm.clear();
+            totalLength = 0;
+
+            jdbcTemplate.query("SELECT id, id_film, id_user, content, useful FROM reviews", rs -> {
+                put(rs.getInt("id"), rs.getInt("id_film"), rs.getInt("id_user"), rs.getString("content"),
+                        rs.getInt("useful"));
+            });
+
+            log.info("Review search index rebuilt for {} reviews and {} terms", documents.size(), postings.size());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the ids of up to {@code limit} reviews matching any term of the query, best first.
+     *
+     * @param filmId the film to search in, or {@code null} to search all reviews
+     */
+    public int[] search(String query, Integer filmId, int limit) {
+        lock.readLock().lock();
+        try {
+            Set<String> terms = new LinkedHashSet<>(analyze(query));
+            RoaringBitmap candidates = new RoaringBitmap();
+            terms.forEach(term -> {
+                RoaringBitmap list = postings.get(term);
+                if (list != null) {
+                    candidates.or(list);
+                }
+            });
+            if (filmId != null) {
+                candidates.and(reviewsByFilm.getOrDefault(filmId, new RoaringBitmap()));
+            }
+
+            Map<String, Double> idf = new HashMap<>();
+            int n = documents.size();
+            terms.forEach(term -> {
+                RoaringBitmap list = postings.get(term);
+                int df = list == null ? 0 : list.getCardinality();
+                idf.put(term, Math.log(1 + (n - df + 0.5) / (df + 0.5)));
+            });
+            double averageLength = n == 0 ? 0 : (double) totalLength / n;
+
+            Comparator<Hit> worstFirst = Comparator.comparingDouble((Hit hit) -> hit.score)
+                    .thenComparing(Comparator.comparingInt((Hit hit) -> hit.reviewId).reversed());
+            PriorityQueue<Hit> top = new PriorityQueue<>(worstFirst);
+            candidates.forEach((int reviewId) -> {
+                Hit hit = new Hit(reviewId, score(documents.get(reviewId), idf, averageLength));
+                if (top.size() < limit) {
+                    top.add(hit);
+                } else if (worstFirst.compare(hit, top.peek()) > 0) {
+                    top.poll();
+                    top.add(hit);
+                }
+            });
+
+            int[] ids = new int[top.size()];
+            for (int i = ids.length - 1; i >= 0; i--) {
+                ids[i] = top.poll().reviewId;
+            }
+            return ids;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void add(Review review) {
+        lock.writeLock().lock();
+        try {
+            remove(review.getReviewId());
+            put(review.getReviewId(), review.getFilmId(), review.getUserId(), review.getContent(),
+                    review.getUseful());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Re-indexes the content of the review, keeping its film, author and usefulness.
+     */
+    public void update(int reviewId, String content) {
+        lock.writeLock().lock();
+        try {
+            Document document = remove(reviewId);
+            if (document != null) {
+                put(reviewId, document.filmId, document.userId, content, document.useful);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void delete(int reviewId) {
+        lock.writeLock().lock();
+        try {
+            remove(reviewId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void addUseful(int reviewId, int delta) {
+        lock.writeLock().lock();
+        try {
+            Document document = documents.get(reviewId);
+            if (document != null) {
+                document.useful += delta;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onFilm(FilmEvent event) {
+        if (event.getOperation() != REMOVE) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            RoaringBitmap reviews = reviewsByFilm.get(event.getFilmId());
+            if (reviews != null) {
+                reviews.clone().forEach((int reviewId) -> remove(reviewId));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUser(UserEvent event) {
+        if (event.getOperation() != REMOVE) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            List<Integer> reviews = new ArrayList<>();
+            documents.forEach((reviewId, document) -> {
+                if (document.userId == event.getUserId()) {
+                    reviews.add(reviewId);
+                }
+            });
+            reviews.forEach(this::remove);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private double score(Document document, Map<String, Double> idf, double averageLength) {
+        double score = 0;
+
+        for (Map.Entry<String, Double> term : idf.entrySet()) {
+            Integer tf = document.frequencies.get(term.getKey());
+            if (tf != null) {
+                double norm = K1 * (1 - B + B * document.length / averageLength);
+                score += term.getValue() * tf * (K1 + 1) / (tf + norm);
+            }
+        }
+
+        double boost = 1 + usefulWeight * Math.signum(document.useful) * Math.log1p(Math.abs(document.useful));
+        return score * Math.max(0.5, boost);
+    }
+
+    private void put(int reviewId, int filmId, int userId, String content, int useful) {
+        List<String> terms = analyze(content);
+        Map<String, Integer> frequencies = new HashMap<>();
+        terms.forEach(term -> frequencies.merge(term, 1, Integer::sum));
+
+        documents.put(reviewId, new Document(filmId, userId, terms.size(), frequencies, useful));
+        frequencies.keySet().forEach(term -> postings.computeIfAbsent(term, t -> new RoaringBitmap()).add(reviewId));
+        reviewsByFilm.computeIfAbsent(filmId, id -> new RoaringBitmap()).add(reviewId);
+        totalLength += terms.size();
+    }
+
+    private Document remove(int reviewId) {
+        Document document = documents.remove(reviewId);
+
+        if (document != null) {
+            document.frequencies.keySet().forEach(term -> removeFrom(postings, term, reviewId));
+            removeFrom(reviewsByFilm, document.filmId, reviewId);
+            totalLength -= document.length;
+        }
+        return document;
+    }
+
+    private static List<String> analyze(String text) {
+        List<String> terms = new ArrayList<>();
+        StringBuilder token = new StringBuilder();
+
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                token.append(c == 'ё' || c == 'Ё' ? 'е' : Character.toLowerCase(c));
+            } else if (token.length() > 0) {
+                String word = token.toString();
+                token.setLength(0);
+                if (word.length() >= MIN_TERM_LENGTH && !STOP_WORDS.contains(word)) {
+                    terms.add(stem(word));
+                }
+            }
+        }
+        return terms;
+    }
+
+    private static String stem(String word) {
+        if (word.chars().anyMatch(c -> Character.UnicodeBlock.of(c) == Character.UnicodeBlock.CYRILLIC)) {
+            for (String suffix : RUSSIAN_SUFFIXES) {
+                if (word.endsWith(suffix) && word.length() - suffix.length() >= MIN_STEM_LENGTH) {
+                    return word.substring(0, word.length() - suffix.length());
+                }
+            }
+            return word;
+        }
+
+        if (word.endsWith("ies") && word.length() > 4) {
+            word = word.substring(0, word.length() - 3) + "y";
+        } else if (word.endsWith("s") && !word.endsWith("ss") && !word.endsWith("us") && !word.endsWith("is")
+                && word.length() > MIN_STEM_LENGTH) {
+            word = word.substring(0, word.length() - 1);
+        }
+        for (String suffix : List.of("ing", "ed", "ly")) {
+            if (word.endsWith(suffix) && word.length() - suffix.length() >= MIN_STEM_LENGTH) {
+                return word.substring(0, word.length() - suffix.length());
+            }
+        }
+        return word;
+    }
+
+    private static <K> void removeFrom(Map<K, RoaringBitmap> postings, K key, int value) {
+        RoaringBitmap bitmap = postings.get(key);
+
+        if (bitmap != null) {
+            bitmap.remove(value);
+            if (bitmap.isEmpty()) {
+                postings.remove(key);
+            }
+        }
+    }
+
+    private static class Document {
+        private final int filmId;
+        private final int userId;
+        private final int length;
+        private final Map<String, Integer> frequencies;
+        private int useful;
+
+        private Document(int filmId, int userId, int length, Map<String, Integer> frequencies, int useful) {
+            this.filmId = filmId;
+            this.userId = userId;
+            this.length = length;
+            this.frequencies = frequencies;
+            this.useful = useful;
+        }
+    }
+
+    private static class Hit {
+        private final int reviewId;
+        private final double score;
+
+        private Hit(int reviewId, double score) {
+            this.reviewId = reviewId;
+            this.score = score;
+        }
+    }
+}
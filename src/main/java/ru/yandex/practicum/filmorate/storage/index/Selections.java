@@ -0,0 +1,50 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Ordering of film selections by the presorted sets the indexes keep.
+ */
+final class Selections {
+
+    private static final int SORT_DIRECTLY_RATIO = 16;
+
+    private Selections() {
+    }
+
+    /**
+     * Returns ids of the first {@code count} selected films in the order of {@code presorted}. A selection much
+     * smaller than the set is looked up and sorted directly, a larger one is filtered while walking the set.
+     *
+     * @param order  the order of {@code presorted}
+     * @param lookup finds the element of a film, or {@code null} if the set does not hold it
+     */
+    static <T> List<Integer> first(RoaringBitmap among, int count, NavigableSet<T> presorted,
+                                   Comparator<? super T> order, IntFunction<T> lookup, ToIntFunction<T> filmIdOf) {
+        if ((long) among.getCardinality() * SORT_DIRECTLY_RATIO < presorted.size()) {
+            List<T> selected = new ArrayList<>(among.getCardinality());
+            among.forEach((int filmId) -> {
+                T element = lookup.apply(filmId);
+                if (element != null) {
+                    selected.add(element);
+                }
+            });
+            return selected.stream().sorted(order).limit(count).map(filmIdOf::applyAsInt).collect(toList());
+        }
+
+        return presorted.stream()
+                .filter(element -> among.contains(filmIdOf.applyAsInt(element)))
+                .limit(count)
+                .map(filmIdOf::applyAsInt)
+                .collect(toList());
+    }
+}
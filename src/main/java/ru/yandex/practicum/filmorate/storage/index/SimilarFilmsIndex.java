@@ -0,0 +1,133 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.yandex.practicum.filmorate.storage.event.FilmEvent;
+import ru.yandex.practicum.filmorate.storage.event.LikeEvent;
+
+import javax.annotation.PostConstruct;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.util.stream.Collectors.toList;
+import static ru.yandex.practicum.filmorate.model.enums.Operation.REMOVE;
+
+/**
+ * Precomputed "liked together" lists: for every film, the ids of the films sharing the most likers with it.
+ * <p>
+ * Lists are kept as plain {@code int} arrays, so a lookup is a single map read. Like events only mark the affected
+ * films as dirty; their lists are recomputed from {@link LikesIndex} by a background job. A deleted film is removed
+ * from every list at once.
+ */
+@Slf4j
+@Component
+public class SimilarFilmsIndex {
+
+    private final LikesIndex likesIndex;
+    private final int size;
+
+    private final Map<Integer, int[]> similar = new ConcurrentHashMap<>();
+    private final RoaringBitmap dirty = new RoaringBitmap();
+
+    public SimilarFilmsIndex(LikesIndex likesIndex,
+                             @Value("${filmorate.similar-films.size:50}") int size) {
+        this.likesIndex = likesIndex;
+        this.size = size;
+    }
+
+    /**
+     * Drops all lists and schedules every liked film for recalculation by the next {@link #refresh()}.
+     */
+    @PostConstruct
+    public void reset() {
+        similar.clear();
+        synchronized (dirty) {
+            dirty.clear();
+            dirty.or(likesIndex.getLikedFilms());
+        }
+    }
+
+    /**
+     * Recalculates all lists synchronously.
+     */
+    public void rebuild() {
+        reset();
+        refresh();
+    }
+
+    @Scheduled(fixedDelayString = "${filmorate.similar-films.refresh-interval:PT5S}")
+    public void refresh() {
+        RoaringBitmap films;
+        synchronized (dirty) {
+            if (dirty.isEmpty()) {
+                return;
+            }
+            films = dirty.clone();
+            dirty.clear();
+        }
+
+        long start = System.nanoTime();
+        for (int filmId : films) {
+            int[] top = likesIndex.getTopCoLiked(filmId, size);
+            if (top.length == 0) {
+                similar.remove(filmId);
+            } else {
+                similar.put(filmId, top);
+            }
+        }
+        log.debug("Similar films recalculated for {} films in {} ms",
+                films.getCardinality(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Returns up to {@code count} ids of films most often liked together with the given one.
+     */
+    public List<Integer> getSimilar(int filmId, int count) {
+        int[] top = similar.getOrDefault(filmId, new int[0]);
+
+        return Arrays.stream(top, 0, Math.min(count, top.length))
+                .boxed()
+                .collect(toList());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onLike(LikeEvent event) {
+        RoaringBitmap affected = likesIndex.getFilmsLikedBy(event.getUserId());
+        affected.add(event.getFilmId());
+
+        synchronized (dirty) {
+            dirty.or(affected);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onFilm(FilmEvent event) {
+        if (event.getOperation() != REMOVE) {
+            return;
+        }
+
+        int filmId = event.getFilmId();
+        similar.remove(filmId);
+
+        // lists are not symmetric, so any film may point at the deleted one: drop it now and recompute the list
+        RoaringBitmap affected = new RoaringBitmap();
+        similar.forEach((id, top) -> {
+            if (Arrays.stream(top).anyMatch(neighbour -> neighbour == filmId)) {
+                affected.add(id);
+            }
+        });
+        affected.forEach((int id) -> similar.computeIfPresent(id, (key, top) ->
+                Arrays.stream(top).filter(neighbour -> neighbour != filmId).toArray()));
+
+        synchronized (dirty) {
+            dirty.remove(filmId);
+            dirty.or(affected);
+        }
+    }
+}
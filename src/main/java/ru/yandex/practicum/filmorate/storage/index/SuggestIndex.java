@@ -0,0 +1,434 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.SuggestStats;
+import ru.yandex.practicum.filmorate.model.Suggestion;
+import ru.yandex.practicum.filmorate.model.enums.SuggestionType;
+import ru.yandex.practicum.filmorate.storage.event.DirectorEvent;
+import ru.yandex.practicum.filmorate.storage.event.FilmEvent;
+import ru.yandex.practicum.filmorate.storage.event.LikeEvent;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static java.util.stream.Collectors.toList;
+import static ru.yandex.practicum.filmorate.model.enums.Operation.ADD;
+import static ru.yandex.practicum.filmorate.model.enums.Operation.REMOVE;
+import static ru.yandex.practicum.filmorate.model.enums.SuggestionType.DIRECTOR;
+import static ru.yandex.practicum.filmorate.model.enums.SuggestionType.FILM;
+
+/**
+ * Prefix trie over lowercased film titles and director names for typeahead.
+ * <p>
+ * Every node caches the best {@code top-size} entries of its subtree, ordered by likes (a director weighs the likes
+ * of all films they directed), so a lookup is a walk down the prefix and a copy of that array. Inserting an entry
+ * offers it to the caches along its path; removing one, or changing its weight, recomputes only the caches that held
+ * it, bottom-up from the children's caches.
+ */
+@Slf4j
+@Component
+public class SuggestIndex {
+
+    private static final char[] NO_KEYS = new char[0];
+    private static final Node[] NO_CHILDREN = new Node[0];
+    private static final Entry[] NO_ENTRIES = new Entry[0];
+
+    private static final Comparator<Entry> ORDER = Comparator.comparingInt((Entry entry) -> entry.likes).reversed()
+            .thenComparing(entry -> entry.key)
+            .thenComparing(entry -> entry.type)
+            .thenComparingInt(entry -> entry.id);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int topSize;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Integer, Entry> films = new HashMap<>();
+    private final Map<Integer, Entry> directors = new HashMap<>();
+    private final Map<Integer, int[]> directorsByFilm = new HashMap<>();
+    private Node root = new Node();
+
+    public SuggestIndex(JdbcTemplate jdbcTemplate,
+                        @Value("${filmorate.suggest.top-size:10}") int topSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.topSize = topSize;
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        lock.writeLock().lock();
+        try {
+            root = new Node();
+            films.clear();
+            directors.clear();
+            directorsByFilm.clear();
+
+            Map<Integer, Integer> filmLikes = new HashMap<>();
+            jdbcTemplate.query("SELECT id, name, likes_count FROM films", rs -> {
+                filmLikes.put(rs.getInt("id"), rs.getInt("likes_count"));
+                index(new Entry(FILM, rs.getInt("id"), rs.getString("name"), rs.getInt("likes_count")));
+            });
+
+            Map<Integer, Integer> directorLikes = new HashMap<>();
+            Map<Integer, List<Integer>> links = new HashMap<>();
+            jdbcTemplate.query("SELECT film_id, director_id FROM film_directors", rs -> {
+                int filmId = rs.getInt("film_id");
+                int directorId = rs.getInt("director_id");
+                links.computeIfAbsent(filmId, id -> new ArrayList<>()).add(directorId);
+                directorLikes.merge(directorId, filmLikes.getOrDefault(filmId, 0), Integer::sum);
+            });
+            links.forEach((filmId, ids) -> directorsByFilm.put(filmId, ids.stream().mapToInt(i -> i).toArray()));
+
+            jdbcTemplate.query("SELECT id, name FROM directors", rs -> {
+                int id = rs.getInt("id");
+                index(new Entry(DIRECTOR, id, rs.getString("name"), directorLikes.getOrDefault(id, 0)));
+            });
+
+            SuggestStats stats = collectStats();
+            log.info("Suggest index rebuilt: {} entries in {} nodes, about {} KB",
+                    stats.getEntries(), stats.getNodes(), stats.getEstimatedBytes() / 1024);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int getTopSize() {
+        return topSize;
+    }
+
+    /**
+     * Returns up to {@code limit} best completions of the prefix; a node keeps no more than the configured top size.
+     */
+    public List<Suggestion> suggest(String prefix, int limit) {
+        lock.readLock().lock();
+        try {
+            Node node = root;
+            String key = prefix.toLowerCase();
+
+            for (int i = 0; i < key.length() && node != null; i++) {
+                node = node.child(key.charAt(i));
+            }
+            if (node == null) {
+                return List.of();
+            }
+
+            return Arrays.stream(node.top)
+                    .limit(limit)
+                    .map(Entry::toSuggestion)
+                    .collect(toList());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public SuggestStats stats() {
+        lock.readLock().lock();
+        try {
+            return collectStats();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onLike(LikeEvent event) {
+        lock.writeLock().lock();
+        try {
+            int delta = event.getOperation() == ADD ? 1 : -1;
+
+            Entry film = films.get(event.getFilmId());
+            if (film != null) {
+                reweigh(film, film.likes + delta);
+            }
+            adjustDirectors(directorsByFilm.get(event.getFilmId()), delta);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onFilm(FilmEvent event) {
+        lock.writeLock().lock();
+        try {
+            int filmId = event.getFilmId();
+
+            Entry old = films.get(filmId);
+            int likes = old == null ? 0 : old.likes;
+            if (old != null) {
+                unindex(old);
+            }
+            adjustDirectors(directorsByFilm.remove(filmId), -likes);
+
+            if (event.getOperation() != REMOVE) {
+                Film film = event.getFilm();
+                index(new Entry(FILM, filmId, film.getName(), likes));
+
+                if (film.getDirectors() != null && !film.getDirectors().isEmpty()) {
+                    int[] ids = film.getDirectors().stream().mapToInt(Director::getId).toArray();
+                    directorsByFilm.put(filmId, ids);
+                    adjustDirectors(ids, likes);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDirector(DirectorEvent event) {
+        lock.writeLock().lock();
+        try {
+            Entry old = directors.get(event.getDirectorId());
+            if (old != null) {
+                unindex(old);
+            }
+
+            if (event.getOperation() != REMOVE) {
+                int likes = old == null ? 0 : old.likes;
+                index(new Entry(DIRECTOR, event.getDirectorId(), event.getDirector().getName(), likes));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void adjustDirectors(int[] ids, int delta) {
+        if (ids == null || delta == 0) {
+            return;
+        }
+
+        for (int id : ids) {
+            Entry director = directors.get(id);
+            if (director != null) {
+                reweigh(director, director.likes + delta);
+            }
+        }
+    }
+
+    private void reweigh(Entry entry, int likes) {
+        unindex(entry);
+        index(new Entry(entry.type, entry.id, entry.text, likes));
+    }
+
+    private void index(Entry entry) {
+        (entry.type == FILM ? films : directors).put(entry.id, entry);
+
+        Node node = root;
+        offer(node, entry);
+        for (int i = 0; i < entry.key.length(); i++) {
+            node = node.childOrCreate(entry.key.charAt(i));
+            offer(node, entry);
+        }
+        node.terminals = insertAt(node.terminals, node.terminals.length, entry);
+    }
+
+    private void unindex(Entry entry) {
+        (entry.type == FILM ? films : directors).remove(entry.id);
+
+        String key = entry.key;
+        Node[] path = new Node[key.length() + 1];
+        path[0] = root;
+        for (int i = 0; i < key.length(); i++) {
+            path[i + 1] = path[i].child(key.charAt(i));
+        }
+
+        Node leaf = path[key.length()];
+        leaf.terminals = removeFrom(leaf.terminals, entry);
+
+        for (int i = key.length(); i >= 0; i--) {
+            Node node = path[i];
+
+            if (i > 0 && node.keys.length == 0 && node.terminals.length == 0) {
+                path[i - 1].removeChild(key.charAt(i - 1));
+            } else if (indexOf(node.top, entry) >= 0) {
+                node.top = recompute(node);
+            } else {
+                break;
+            }
+        }
+    }
+
+    private void offer(Node node, Entry entry) {
+        Entry[] top = node.top;
+        if (top.length == topSize && ORDER.compare(entry, top[top.length - 1]) >= 0) {
+            return;
+        }
+
+        int at = Arrays.binarySearch(top, entry, ORDER);
+        Entry[] offered = insertAt(top, at < 0 ? -at - 1 : at, entry);
+        node.top = offered.length > topSize ? Arrays.copyOf(offered, topSize) : offered;
+    }
+
+    private Entry[] recompute(Node node) {
+        List<Entry> candidates = new ArrayList<>(Arrays.asList(node.terminals));
+        for (Node child : node.children) {
+            candidates.addAll(Arrays.asList(child.top));
+        }
+
+        return candidates.stream()
+                .sorted(ORDER)
+                .limit(topSize)
+                .toArray(Entry[]::new);
+    }
+
+    private SuggestStats collectStats() {
+        int nodes = 0;
+        long bytes = 0;
+        Deque<Node> stack = new ArrayDeque<>(List.of(root));
+
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+            nodes++;
+            bytes += Node.SHALLOW_BYTES
+                    + arrayBytes(node.keys.length, Character.BYTES, node.keys == NO_KEYS)
+                    + arrayBytes(node.children.length, Integer.BYTES, node.children == NO_CHILDREN)
+                    + arrayBytes(node.terminals.length, Integer.BYTES, node.terminals == NO_ENTRIES)
+                    + arrayBytes(node.top.length, Integer.BYTES, node.top == NO_ENTRIES);
+            stack.addAll(Arrays.asList(node.children));
+        }
+
+        int entries = films.size() + directors.size();
+        for (Map<Integer, Entry> map : List.of(films, directors)) {
+            for (Entry entry : map.values()) {
+                bytes += Entry.SHALLOW_BYTES + stringBytes(entry.text) + stringBytes(entry.key);
+            }
+        }
+
+        return SuggestStats.builder()
+                .nodes(nodes)
+                .entries(entries)
+                .topSize(topSize)
+                .estimatedBytes(bytes)
+                .build();
+    }
+
+    private static long arrayBytes(int length, int elementBytes, boolean shared) {
+        return shared ? 0 : align(16 + (long) length * elementBytes);
+    }
+
+    private static long stringBytes(String value) {
+        return align(24) + align(16 + 2L * value.length());
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7;
+    }
+
+    private static int indexOf(Entry[] entries, Entry entry) {
+        for (int i = 0; i < entries.length; i++) {
+            if (entries[i] == entry) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static Entry[] insertAt(Entry[] entries, int at, Entry entry) {
+        Entry[] result = new Entry[entries.length + 1];
+        System.arraycopy(entries, 0, result, 0, at);
+        result[at] = entry;
+        System.arraycopy(entries, at, result, at + 1, entries.length - at);
+        return result;
+    }
+
+    private static Entry[] removeFrom(Entry[] entries, Entry entry) {
+        int at = indexOf(entries, entry);
+        if (at < 0) {
+            return entries;
+        }
+        if (entries.length == 1) {
+            return NO_ENTRIES;
+        }
+
+        Entry[] result = new Entry[entries.length - 1];
+        System.arraycopy(entries, 0, result, 0, at);
+        System.arraycopy(entries, at + 1, result, at, entries.length - at - 1);
+        return result;
+    }
+
+    private static final class Node {
+        private static final long SHALLOW_BYTES = 32;
+
+        private char[] keys = NO_KEYS;
+        private Node[] children = NO_CHILDREN;
+        private Entry[] terminals = NO_ENTRIES;
+        private Entry[] top = NO_ENTRIES;
+
+        private Node child(char c) {
+            int at = Arrays.binarySearch(keys, c);
+            return at >= 0 ? children[at] : null;
+        }
+
+        private Node childOrCreate(char c) {
+            int at = Arrays.binarySearch(keys, c);
+            if (at >= 0) {
+                return children[at];
+            }
+
+            at = -at - 1;
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, at);
+            System.arraycopy(children, 0, newChildren, 0, at);
+            System.arraycopy(keys, at, newKeys, at + 1, keys.length - at);
+            System.arraycopy(children, at, newChildren, at + 1, children.length - at);
+
+            Node child = new Node();
+            newKeys[at] = c;
+            newChildren[at] = child;
+            keys = newKeys;
+            children = newChildren;
+            return child;
+        }
+
+        private void removeChild(char c) {
+            int at = Arrays.binarySearch(keys, c);
+            if (at < 0) {
+                return;
+            }
+
+            char[] newKeys = new char[keys.length - 1];
+            Node[] newChildren = new Node[children.length - 1];
+            System.arraycopy(keys, 0, newKeys, 0, at);
+            System.arraycopy(children, 0, newChildren, 0, at);
+            System.arraycopy(keys, at + 1, newKeys, at, keys.length - at - 1);
+            System.arraycopy(children, at + 1, newChildren, at, children.length - at - 1);
+            keys = newKeys.length == 0 ? NO_KEYS : newKeys;
+            children = newChildren.length == 0 ? NO_CHILDREN : newChildren;
+        }
+    }
+
+    private static final class Entry {
+        private static final long SHALLOW_BYTES = 40;
+
+        private final SuggestionType type;
+        private final int id;
+        private final String text;
+        private final String key;
+        private final int likes;
+
+        private Entry(SuggestionType type, int id, String text, int likes) {
+            this.type = type;
+            this.id = id;
+            this.text = text;
+            this.key = text.toLowerCase();
+            this.likes = likes;
+        }
+
+        private Suggestion toSuggestion() {
+            return Suggestion.builder()
+                    .text(text)
+                    .type(type)
+                    .id(id)
+                    .likes(likes)
+                    .build();
+        }
+    }
+}
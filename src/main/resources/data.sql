@@ -3,6 +3,8 @@ DELETE FROM film_genres;
 DELETE FROM friends;
 DELETE FROM film_directors;
 DELETE FROM feed;
+DELETE FROM feed_archive;
+DELETE FROM review_reactions;
 DELETE FROM reviews;
 DELETE FROM films;
 DELETE FROM users;
@@ -14,6 +16,7 @@ ALTER TABLE films ALTER COLUMN id RESTART WITH 1;
 ALTER TABLE users ALTER COLUMN id RESTART WITH 1;
 ALTER TABLE reviews ALTER COLUMN id RESTART WITH 1;
 ALTER TABLE feed ALTER COLUMN id_event RESTART WITH 1;
+ALTER TABLE feed_archive ALTER COLUMN id RESTART WITH 1;
 ALTER TABLE directors ALTER COLUMN id RESTART WITH 1;
 
 INSERT INTO genres(id, name) VALUES (1, 'Комедия');
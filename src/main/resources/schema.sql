@@ -24,9 +24,14 @@ CREATE TABLE IF NOT EXISTS films
     description VARCHAR,
     releaseDate DATE,
     duration    INTEGER,
-    mpa         INTEGER REFERENCES mpa (id)
+    mpa         INTEGER REFERENCES mpa (id),
+    likes_count INTEGER DEFAULT 0 NOT NULL
 );
 
+ALTER TABLE films ADD COLUMN IF NOT EXISTS likes_count INTEGER DEFAULT 0 NOT NULL;
+CREATE INDEX IF NOT EXISTS films_likes_count_idx ON films (likes_count DESC, id);
+CREATE INDEX IF NOT EXISTS films_mpa_likes_count_idx ON films (mpa, likes_count DESC, id);
+
 CREATE TABLE IF NOT EXISTS users
 (
     id INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
@@ -52,8 +57,27 @@ CREATE TABLE IF NOT EXISTS feed
     id_entity  INTEGER,
     id_user    INTEGER REFERENCES users (id) ON DELETE CASCADE,
     timestamp  BIGINT,
-    event_type VARCHAR,
-    operation  VARCHAR
+    event_type TINYINT,
+    operation  TINYINT
+);
+
+UPDATE feed SET event_type = CASE CAST(event_type AS VARCHAR)
+                                 WHEN 'LIKE' THEN 0 WHEN 'REVIEW' THEN 1 WHEN 'FRIEND' THEN 2
+                                 ELSE event_type END,
+                operation  = CASE CAST(operation AS VARCHAR)
+                                 WHEN 'REMOVE' THEN 0 WHEN 'ADD' THEN 1 WHEN 'UPDATE' THEN 2
+                                 ELSE operation END;
+ALTER TABLE feed ALTER COLUMN event_type SET DATA TYPE TINYINT;
+ALTER TABLE feed ALTER COLUMN operation SET DATA TYPE TINYINT;
+
+CREATE TABLE IF NOT EXISTS feed_archive
+(
+    id             INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    id_user        INTEGER REFERENCES users (id) ON DELETE CASCADE,
+    from_timestamp BIGINT  NOT NULL,
+    to_timestamp   BIGINT  NOT NULL,
+    events         INTEGER NOT NULL,
+    payload        VARBINARY NOT NULL
 );
 
 CREATE TABLE IF NOT EXISTS film_directors
@@ -72,6 +96,14 @@ CREATE TABLE IF NOT EXISTS film_genres
     PRIMARY KEY (id_film, id_genre)
 );
 
+CREATE TABLE IF NOT EXISTS review_reactions
+(
+    id_review INTEGER REFERENCES reviews (id) ON DELETE CASCADE,
+    id_user   INTEGER REFERENCES users (id) ON DELETE CASCADE,
+    is_like   BOOLEAN NOT NULL,
+    PRIMARY KEY (id_review, id_user)
+);
+
 CREATE TABLE IF NOT EXISTS likes_by_users
 (
     id_film INTEGER REFERENCES films (id) ON DELETE CASCADE,
@@ -86,3 +118,8 @@ CREATE TABLE IF NOT EXISTS friends
     PRIMARY KEY (id_user, id_friend)
 );
 
+
+CREATE INDEX IF NOT EXISTS reviews_useful_idx ON reviews (useful DESC, id);
+CREATE INDEX IF NOT EXISTS reviews_film_useful_idx ON reviews (id_film, useful DESC, id);
+CREATE INDEX IF NOT EXISTS feed_user_timestamp_idx ON feed (id_user, timestamp, id_event);
+CREATE INDEX IF NOT EXISTS feed_archive_user_idx ON feed_archive (id_user, from_timestamp);
@@ -1,6 +1,7 @@
 package ru.yandex.practicum.filmorate;
 
 import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.MethodOrderer;
 import org.junit.jupiter.api.Order;
 import org.junit.jupiter.api.Test;
@@ -8,15 +9,36 @@ import org.junit.jupiter.api.TestMethodOrder;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import ru.yandex.practicum.filmorate.model.Feed;
+import ru.yandex.practicum.filmorate.model.Page;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.model.enums.EventType;
 import ru.yandex.practicum.filmorate.model.enums.Operation;
+import ru.yandex.practicum.filmorate.service.FeedStreamHub;
+import ru.yandex.practicum.filmorate.service.FeedWriter;
+import ru.yandex.practicum.filmorate.service.TimelineService;
+import ru.yandex.practicum.filmorate.service.UserService;
 import ru.yandex.practicum.filmorate.storage.FeedStorage;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.storage.dao.FriendsDao;
+import ru.yandex.practicum.filmorate.storage.event.FeedEvent;
 
+import java.io.IOException;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDate;
+import java.time.Month;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -28,20 +50,40 @@ public class FeedTests {
 
     private final FeedStorage feedStorage;
     private final UserStorage userStorage;
+    private final UserService userService;
+    private final FriendsDao friendsDao;
+    private final FeedWriter feedWriter;
+    private final TimelineService timelineService;
+    private final FeedStreamHub feedStreamHub;
+    private final JdbcTemplate jdbcTemplate;
+    private User user;
+
+    @BeforeEach
+    public void clearFeed() {
+        feedWriter.flush();
+        jdbcTemplate.update("DELETE FROM feed");
+        jdbcTemplate.update("DELETE FROM feed_archive");
+
+        user = userStorage.create(User.builder()
+                .email("reader@email.ru")
+                .login("reader")
+                .name("reader")
+                .birthday(LocalDate.of(2000, Month.DECEMBER, 10))
+                .build());
+    }
 
     @Test
     @Order(1)
     public void testAddFeedAndGetFeedByUserId() {
-        User user = User.builder()
+        User user = userStorage.create(User.builder()
                 .email("email@email.ru")
                 .login("login")
                 .name("name")
                 .birthday(LocalDate.now().minusYears(100))
-                .build();
-        userStorage.create(user);
+                .build());
 
         Feed feed = Feed.builder()
-                .userId(1)
+                .userId(user.getId())
                 .entityId(1)
                 .timestamp(Instant.now().toEpochMilli())
                 .eventType(EventType.FRIEND)
@@ -56,22 +98,334 @@ public class FeedTests {
                 feed.getOperation()
         );
 
-        feed.setEventId(1);
-
-        assertTrue(feedStorage.findByUserId(1).contains(feed));
+        List<Feed> feeds = feedStorage.findByUserId(user.getId());
+        assertEquals(1, feeds.size());
+        feed.setEventId(feeds.get(0).getEventId());
+        assertEquals(feed, feeds.get(0));
     }
 
     @Test
     @Order(2)
     public void testGetFeedByIdWithoutEvents() {
-        User user = User.builder()
+        User user = userStorage.create(User.builder()
                 .email("email2@email.ru")
                 .login("login2")
                 .name("name2")
                 .birthday(LocalDate.now().minusYears(100))
-                .build();
-        userStorage.create(user);
+                .build());
+
+        assertTrue(feedStorage.findByUserId(user.getId()).isEmpty());
+    }
+
+    @Test
+    public void testFeedIsWrittenBehindInBatches() throws InterruptedException {
+        for (int i = 1; i <= 3; i++) {
+            userService.addFriend(user.getId(), userStorage.create(User.builder()
+                    .email("friend" + i + "@email.ru")
+                    .login("friend" + i)
+                    .name("friend" + i)
+                    .birthday(LocalDate.of(1990, 1, 1))
+                    .build()).getId());
+        }
+        assertEquals(3, userService.getFeedByUserId(user.getId()).size());
+
+        FeedWriter writer = new FeedWriter(feedStorage, "async", 10, 4, Duration.ofHours(1));
+        writer.start();
+        for (int i = 0; i < 25; i++) {
+            writer.write(Feed.builder()
+                    .entityId(i)
+                    .userId(user.getId())
+                    .timestamp(Instant.now().toEpochMilli())
+                    .eventType(EventType.LIKE)
+                    .operation(Operation.ADD)
+                    .build());
+        }
+        writer.stop();
+
+        assertEquals(28, feedStorage.findByUserId(user.getId()).size());
+    }
+
+    @Test
+    public void testFeedWriterDropsOnlyEventsThatCannotBeWritten() {
+        User deleted = userStorage.create(User.builder()
+                .email("deleted@email.ru")
+                .login("deleted")
+                .name("deleted")
+                .birthday(LocalDate.of(1990, 1, 1))
+                .build());
+        userStorage.deleteById(deleted.getId());
+
+        FeedWriter writer = new FeedWriter(feedStorage, "async", 3, 10, Duration.ofHours(1));
+        int[] users = {user.getId(), deleted.getId(), user.getId(), user.getId()};
+        for (int i = 0; i < users.length; i++) {
+            writer.write(Feed.builder()
+                    .entityId(i)
+                    .userId(users[i])
+                    .timestamp(Instant.now().toEpochMilli())
+                    .eventType(EventType.LIKE)
+                    .operation(Operation.ADD)
+                    .build());
+        }
+
+        // the fourth event did not fit into the queue and was written right behind the queued ones
+        assertEquals(List.of(0, 2, 3), feedStorage.findByUserId(user.getId()).stream()
+                .map(Feed::getEntityId).collect(Collectors.toList()));
+        assertEquals(0, writer.flush());
+    }
+
+    @Test
+    public void testFullFeedQueueWritesOneBatchAheadOfTheEvent() {
+        FeedWriter writer = new FeedWriter(feedStorage, "async", 3, 2, Duration.ofHours(1));
+        for (int i = 0; i < 4; i++) {
+            writer.write(Feed.builder()
+                    .entityId(i)
+                    .userId(user.getId())
+                    .timestamp(Instant.now().toEpochMilli())
+                    .eventType(EventType.LIKE)
+                    .operation(Operation.ADD)
+                    .build());
+        }
+
+        // the fourth event was written behind the oldest batch, the third one is still queued
+        assertEquals(List.of(0, 1, 3), feedStorage.findByUserId(user.getId()).stream()
+                .map(Feed::getEntityId).collect(Collectors.toList()));
+        assertEquals(1, writer.flush());
+        assertEquals(List.of(0, 1, 3, 2), feedStorage.findByUserId(user.getId()).stream()
+                .map(Feed::getEntityId).collect(Collectors.toList()));
+        assertEquals(0, writer.flush());
+    }
+
+    @Test
+    public void testFriendsFeedMergesFriendsActivity() {
+        List<Integer> friends = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            friends.add(userStorage.create(User.builder()
+                    .email("timeline" + i + "@email.ru")
+                    .login("timeline" + i)
+                    .name("timeline" + i)
+                    .birthday(LocalDate.of(1990, 1, 1))
+                    .build()).getId());
+        }
+        friendsDao.addFriend(user.getId(), friends.get(0));
+        friendsDao.addFriend(user.getId(), friends.get(1));
+
+        List<Feed> events = new ArrayList<>();
+        for (int i = 0; i < 9; i++) {
+            events.add(Feed.builder()
+                    .entityId(i)
+                    .userId(friends.get(i % 3))
+                    .timestamp(1000L * (i + 1))
+                    .eventType(EventType.LIKE)
+                    .operation(Operation.ADD)
+                    .build());
+        }
+        feedStorage.addFeeds(events);
+
+        Page<Feed> first = userService.getFriendsFeed(user.getId(), null, 4);
+        assertEquals(List.of(7, 6, 4, 3), first.getItems().stream().map(Feed::getEntityId)
+                .collect(Collectors.toList()));
+        Page<Feed> second = userService.getFriendsFeed(user.getId(), first.getNext(), 4);
+        assertEquals(List.of(1, 0), second.getItems().stream().map(Feed::getEntityId)
+                .collect(Collectors.toList()));
+        assertNull(second.getNext());
+
+        feedStorage.addFeeds(List.of(Feed.builder()
+                .entityId(9)
+                .userId(friends.get(1))
+                .timestamp(10_000L)
+                .eventType(EventType.REVIEW)
+                .operation(Operation.ADD)
+                .build()));
+        assertEquals(List.of(9, 7, 6), userService.getFriendsFeed(user.getId(), null, 3).getItems().stream()
+                .map(Feed::getEntityId).collect(Collectors.toList()));
+
+        friendsDao.addFriend(user.getId(), friends.get(2));
+        List<Integer> all = userService.getFriendsFeed(user.getId(), null, 100).getItems().stream()
+                .map(Feed::getEntityId).collect(Collectors.toList());
+        assertEquals(List.of(9, 8, 7, 6, 5, 4, 3, 2, 1, 0), all);
+
+        timelineService.rebuild();
+        List<Integer> merged = new ArrayList<>();
+        String cursor = null;
+        do {
+            Page<Feed> page = userService.getFriendsFeed(user.getId(), cursor, 3);
+            page.getItems().forEach(feed -> merged.add(feed.getEntityId()));
+            cursor = page.getNext();
+        } while (cursor != null);
+        assertEquals(all, merged);
+    }
+
+    @Test
+    public void testFeedStreamPushesResumesAndEvictsSlowClients() throws Exception {
+        RecordingEmitter live = new RecordingEmitter(null);
+        feedStreamHub.subscribe(user.getId(), null, live);
+
+        List<Feed> events = feedEvents(3);
+        feedStorage.addFeeds(events);
+        List<Long> ids = events.stream().map(Feed::getEventId).collect(Collectors.toList());
+        awaitTrue(() -> live.ids.size() == 3);
+        assertEquals(ids, live.ids);
+
+        RecordingEmitter resumed = new RecordingEmitter(null);
+        feedStreamHub.subscribe(user.getId(), ids.get(0), resumed);
+        assertEquals(ids.subList(1, 3), resumed.ids);
+
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingEmitter slow = new RecordingEmitter(release);
+        feedStreamHub.subscribe(user.getId(), null, slow);
+        int subscribers = feedStreamHub.getSubscribersCount();
+
+        for (int i = 1; i <= 10; i++) {
+            feedStorage.addFeeds(feedEvents(30));
+            int sent = 3 + 30 * i;
+            awaitTrue(() -> live.ids.size() == sent && resumed.ids.size() == sent - 1);
+        }
+        assertEquals(subscribers - 1, feedStreamHub.getSubscribersCount());
+        release.countDown();
+        awaitTrue(() -> slow.completed);
+        assertFalse(live.completed);
+
+        live.complete();
+        resumed.complete();
+        assertEquals(subscribers - 3, feedStreamHub.getSubscribersCount());
+    }
+
+    @Test
+    public void testFeedStreamSendsEventsCommittedOutOfIdOrder() throws Exception {
+        RecordingEmitter live = new RecordingEmitter(null);
+        feedStreamHub.subscribe(user.getId(), null, live);
+
+        List<Feed> events = feedEvents(2);
+        feedStorage.addFeeds(events);
+        awaitTrue(() -> live.ids.size() == 2);
+
+        // in sync write mode a transaction holding a lower id may commit after one holding a higher id
+        Feed later = feedEvents(1).get(0);
+        later.setEventId(events.get(1).getEventId() + 2);
+        Feed earlier = feedEvents(1).get(0);
+        earlier.setEventId(events.get(1).getEventId() + 1);
+        feedStreamHub.onFeed(new FeedEvent(List.of(later)));
+        feedStreamHub.onFeed(new FeedEvent(List.of(earlier)));
+        awaitTrue(() -> live.ids.size() == 4);
+
+        assertEquals(List.of(later.getEventId(), earlier.getEventId()), live.ids.subList(2, 4));
+        live.complete();
+    }
+
+    private List<Feed> feedEvents(int count) {
+        List<Feed> events = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            events.add(Feed.builder()
+                    .entityId(i)
+                    .userId(user.getId())
+                    .timestamp(Instant.now().toEpochMilli())
+                    .eventType(EventType.LIKE)
+                    .operation(Operation.ADD)
+                    .build());
+        }
+        return events;
+    }
+
+    private static void awaitTrue(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "Condition was not met in time");
+            Thread.sleep(10);
+        }
+    }
+
+    private static class RecordingEmitter extends SseEmitter {
+        private static final Pattern ID = Pattern.compile("^id:(\\d+)", Pattern.MULTILINE);
+
+        private final CountDownLatch release;
+        private final List<Long> ids = new CopyOnWriteArrayList<>();
+        private volatile boolean completed;
+        private Runnable onCompletion = () -> {
+        };
+
+        private RecordingEmitter(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public void onCompletion(Runnable callback) {
+            onCompletion = callback;
+        }
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            Matcher matcher = ID.matcher(builder.build().iterator().next().getData().toString());
+            if (!matcher.find()) {
+                return;
+            }
+            try {
+                if (release != null) {
+                    release.await();
+                }
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            ids.add(Long.parseLong(matcher.group(1)));
+        }
+
+        @Override
+        public void complete() {
+            completed = true;
+            onCompletion.run();
+        }
+    }
+
+    @Test
+    public void testFeedBatchIsStoredAllOrNone() {
+        List<Feed> events = new ArrayList<>();
+        for (int userId : new int[]{user.getId(), user.getId() + 1000}) {
+            events.add(Feed.builder()
+                    .entityId(1)
+                    .userId(userId)
+                    .timestamp(Instant.now().toEpochMilli())
+                    .eventType(EventType.FRIEND)
+                    .operation(Operation.ADD)
+                    .build());
+        }
+
+        assertThrows(DataAccessException.class, () -> feedStorage.addFeeds(events));
+        assertTrue(feedStorage.findByUserId(user.getId()).isEmpty());
+    }
+
+    @Test
+    public void testFeedPagedBackwardsAndArchived() {
+        long now = Instant.now().toEpochMilli();
+        List<Feed> events = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            events.add(Feed.builder()
+                    .entityId(i)
+                    .userId(user.getId())
+                    .timestamp(i < 2 ? 1000L * (i + 1) : now + i)
+                    .eventType(i % 2 == 0 ? EventType.LIKE : EventType.REVIEW)
+                    .operation(Operation.values()[i % 3])
+                    .build());
+        }
+        feedStorage.addFeeds(events);
+
+        Page<Feed> first = userService.getFeedPageBeforeByUserId(user.getId(), "", 3);
+        assertEquals(List.of(4, 3, 2), first.getItems().stream().map(Feed::getEntityId).collect(Collectors.toList()));
+        Page<Feed> second = userService.getFeedPageBeforeByUserId(user.getId(), first.getNext(), 3);
+        assertEquals(List.of(1, 0), second.getItems().stream().map(Feed::getEntityId).collect(Collectors.toList()));
+        assertNull(second.getNext());
+
+        assertEquals(2, feedStorage.archiveOlderThan(now - 1000, 1));
+        assertEquals(0, feedStorage.archiveOlderThan(now - 1000, 1));
+
+        List<Feed> live = feedStorage.findByUserId(user.getId());
+        List<Feed> archived = feedStorage.findArchivedByUserId(user.getId());
+        assertEquals(3, live.size());
+        assertEquals(2, archived.size());
 
-        assertTrue(feedStorage.findByUserId(2).isEmpty());
+        List<Feed> history = new ArrayList<>(archived);
+        history.addAll(live);
+        for (int i = 0; i < 5; i++) {
+            events.get(i).setEventId(history.get(i).getEventId());
+        }
+        assertEquals(events, history);
     }
 }
@@ -0,0 +1,113 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.CacheStats;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.storage.cache.FilmCache;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FilmCacheTests {
+
+    @Test
+    public void testLeastRecentlyUsedFilmIsEvicted() {
+        FilmCache cache = new FilmCache(2, Duration.ofHours(1));
+        cache.put(film(1), cache.version());
+        cache.put(film(2), cache.version());
+
+        assertTrue(cache.get(1).isPresent());
+        cache.put(film(3), cache.version());
+
+        assertTrue(cache.get(2).isEmpty());
+        assertEquals(film(1), cache.get(1).orElseThrow());
+        assertEquals(film(3), cache.get(3).orElseThrow());
+        assertEquals(1, cache.stats().getEvictions());
+        assertEquals(2, cache.stats().getSize());
+    }
+
+    @Test
+    public void testFilmExpiresAfterTtl() throws InterruptedException {
+        FilmCache cache = new FilmCache(10, Duration.ofMillis(50));
+        cache.put(film(1), cache.version());
+        assertTrue(cache.get(1).isPresent());
+
+        Thread.sleep(100);
+
+        assertTrue(cache.get(1).isEmpty());
+        assertEquals(1, cache.stats().getExpirations());
+        assertEquals(0, cache.stats().getSize());
+    }
+
+    @Test
+    public void testLoadRacingWithInvalidationIsNotStored() {
+        FilmCache cache = new FilmCache(10, Duration.ofHours(1));
+
+        long version = cache.version();
+        cache.invalidate(1);
+        cache.put(film(1), version);
+        assertTrue(cache.get(1).isEmpty());
+
+        version = cache.version();
+        cache.invalidateByDirector(7);
+        cache.put(film(2), version);
+        assertTrue(cache.get(2).isEmpty());
+
+        cache.put(film(3), cache.version());
+        assertTrue(cache.get(3).isPresent());
+    }
+
+    @Test
+    public void testCachedFilmIsCopied() {
+        FilmCache cache = new FilmCache(10, Duration.ofHours(1));
+        Film film = film(1);
+        cache.put(film, cache.version());
+
+        film.setName("changed");
+        film.getGenres().clear();
+        cache.get(1).orElseThrow().setName("changed again");
+
+        assertEquals(film(1), cache.get(1).orElseThrow());
+    }
+
+    @Test
+    public void testStatsCountHitsAndMisses() {
+        FilmCache cache = new FilmCache(10, Duration.ofHours(1));
+        cache.put(film(1), cache.version());
+
+        cache.get(1);
+        cache.get(1);
+        cache.get(1);
+        cache.get(2);
+
+        CacheStats stats = cache.stats();
+        assertEquals(3, stats.getHits());
+        assertEquals(1, stats.getMisses());
+        assertEquals(0.75, stats.getHitRate());
+        assertEquals(1, stats.getSize());
+        assertEquals(10, stats.getMaxSize());
+
+        cache.invalidateAll();
+        assertEquals(0, cache.stats().getSize());
+    }
+
+    private static Film film(int id) {
+        return Film.builder()
+                .id(id)
+                .name("film" + id)
+                .description("description")
+                .releaseDate(LocalDate.of(2010, 12, 10))
+                .duration(100)
+                .mpa(new Mpa(1, "G", null))
+                .genres(new ArrayList<>(List.of(new Genre(1, "Комедия"))))
+                .directors(new ArrayList<>(List.of(Director.builder().id(7).name("Director").build())))
+                .build();
+    }
+}
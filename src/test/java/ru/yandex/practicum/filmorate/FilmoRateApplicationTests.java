@@ -1,10 +1,23 @@
 package ru.yandex.practicum.filmorate;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.Month;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -14,26 +27,47 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.jdbc.core.JdbcTemplate;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import ru.yandex.practicum.filmorate.exception.BadRequestException;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Director;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmBatchResult;
+import ru.yandex.practicum.filmorate.model.FilmBrowseResult;
+import ru.yandex.practicum.filmorate.model.FriendGraphStats;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.LikeImportResult;
 import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.Page;
+import ru.yandex.practicum.filmorate.model.Suggestion;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.dto.FilmFilter;
+import ru.yandex.practicum.filmorate.model.enums.ExportFormat;
+import ru.yandex.practicum.filmorate.model.enums.Operation;
+import ru.yandex.practicum.filmorate.service.FeedWriter;
 import ru.yandex.practicum.filmorate.service.FilmService;
 import ru.yandex.practicum.filmorate.service.GenreService;
+import ru.yandex.practicum.filmorate.service.LikeImportService;
 import ru.yandex.practicum.filmorate.service.MpaService;
 import ru.yandex.practicum.filmorate.service.UserService;
 import ru.yandex.practicum.filmorate.storage.DirectorStorage;
 import ru.yandex.practicum.filmorate.storage.dao.*;
 import ru.yandex.practicum.filmorate.storage.dao.MpaDao;
+import ru.yandex.practicum.filmorate.storage.event.FilmEvent;
+import ru.yandex.practicum.filmorate.storage.index.FriendGraph;
+import ru.yandex.practicum.filmorate.storage.index.LikesIndex;
+import ru.yandex.practicum.filmorate.storage.index.PopularityIndex;
+import ru.yandex.practicum.filmorate.storage.index.SimilarFilmsIndex;
 
+@Slf4j
 @SpringBootTest
 @AutoConfigureTestDatabase
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
@@ -47,21 +81,25 @@ public class FilmoRateApplicationTests {
     private final GenreDao genreDao;
     private final GenreService genreService;
     private final LikesDao likesDao;
+    private final LikeImportService likeImportService;
     private final MpaDao mpaDao;
     private final MpaService mpaService;
     private final JdbcTemplate jdbcTemplate;
+    private final FeedWriter feedWriter;
+    private final LikesIndex likesIndex;
+    private final PopularityIndex popularityIndex;
+    private final SimilarFilmsIndex similarFilmsIndex;
+    private final FriendGraph friendGraph;
     private User user;
     private Film film;
     private Director director;
 
     @BeforeEach
     public void addDataAndRestartDb() {
-        jdbcTemplate.update("DELETE FROM likes_by_users");
-        jdbcTemplate.update("DELETE FROM film_genres");
-        jdbcTemplate.update("DELETE FROM film_directors");
-        jdbcTemplate.update("DELETE FROM friends");
-        jdbcTemplate.update("DELETE FROM films");
-        jdbcTemplate.update("DELETE FROM users");
+        feedWriter.flush();
+        // deleting through the DAOs publishes the events that keep the in-memory indexes in step
+        jdbcTemplate.queryForList("SELECT id FROM users", Integer.class).forEach(userStorage::deleteById);
+        jdbcTemplate.queryForList("SELECT id FROM films", Integer.class).forEach(filmStorage::deleteById);
 
         jdbcTemplate.update("ALTER TABLE films ALTER COLUMN id RESTART WITH 1");
         jdbcTemplate.update("ALTER TABLE users ALTER COLUMN id RESTART WITH 1");
@@ -274,6 +312,15 @@ public class FilmoRateApplicationTests {
         assertEquals(testFilm, filmStorage.findById(1).orElseThrow());
     }
 
+    @Test
+    public void testFindFilmByIdAfterDirectorUpdate() {
+        filmStorage.findById(film.getId());
+
+        Director updated = directorStorage.update(director.toBuilder().name("Updated director").build());
+
+        assertEquals(List.of(updated), filmStorage.findById(film.getId()).orElseThrow().getDirectors());
+    }
+
     @Test
     public void testUpdateFilmWithWrongId() {
         Film testFilm = Film.builder()
@@ -379,6 +426,80 @@ public class FilmoRateApplicationTests {
         assertEquals(friendsDao.findCommonFriends(user.getId(), userTest2.getId()), List.of(userTest));
     }
 
+    @Test
+    public void testFriendSuggestionsRankedByMutualFriends() {
+        List<User> users = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            users.add(userStorage.create(User.builder()
+                    .email("fof" + i + "@email.ru")
+                    .login("fof" + i)
+                    .name("fof" + i)
+                    .birthday(LocalDate.of(1990, 1, 1))
+                    .build()));
+        }
+        User a = users.get(0);
+        User b = users.get(1);
+        User c = users.get(2);
+        User d = users.get(3);
+        User e = users.get(4);
+        friendsDao.addFriend(user.getId(), a.getId());
+        friendsDao.addFriend(user.getId(), b.getId());
+        friendsDao.addFriend(a.getId(), d.getId());
+        friendsDao.addFriend(a.getId(), c.getId());
+        friendsDao.addFriend(a.getId(), b.getId());
+        friendsDao.addFriend(b.getId(), c.getId());
+        friendsDao.addFriend(b.getId(), user.getId());
+        friendsDao.addFriend(c.getId(), e.getId());
+
+        assertEquals(List.of(c, d), userService.getFriendSuggestions(user.getId(), 10));
+        assertEquals(List.of(c), userService.getFriendSuggestions(user.getId(), 1));
+        assertTrue(userService.getFriendSuggestions(e.getId(), 10).isEmpty());
+        assertThrows(BadRequestException.class, () -> userService.getFriendSuggestions(user.getId(), 0));
+
+        FriendGraph capped = new FriendGraph(jdbcTemplate, 3);
+        capped.rebuild();
+        assertArrayEquals(new int[]{c.getId(), d.getId()}, capped.suggest(user.getId(), 10));
+
+        capped = new FriendGraph(jdbcTemplate, 2);
+        capped.rebuild();
+        assertArrayEquals(new int[]{c.getId()}, capped.suggest(user.getId(), 10));
+    }
+
+    @Test
+    public void testFriendGraphFollowsFriendshipChanges() {
+        List<User> users = new ArrayList<>();
+        for (int i = 1; i <= 4; i++) {
+            users.add(userStorage.create(User.builder()
+                    .email("graph" + i + "@email.ru")
+                    .login("graph" + i)
+                    .name("graph" + i)
+                    .birthday(LocalDate.of(1990, 1, 1))
+                    .build()));
+        }
+        for (int i = 3; i >= 0; i--) {
+            friendsDao.addFriend(user.getId(), users.get(i).getId());
+        }
+        friendsDao.addFriend(users.get(0).getId(), users.get(3).getId());
+        friendsDao.addFriend(users.get(0).getId(), users.get(1).getId());
+
+        assertEquals(users, friendsDao.findFriends(user.getId()));
+        assertEquals(List.of(users.get(1), users.get(3)),
+                friendsDao.findCommonFriends(user.getId(), users.get(0).getId()));
+
+        friendsDao.removeFriend(user.getId(), users.get(1).getId());
+        userStorage.deleteById(users.get(3).getId());
+        assertEquals(List.of(users.get(0), users.get(2)), friendsDao.findFriends(user.getId()));
+        assertTrue(friendsDao.findCommonFriends(user.getId(), users.get(0).getId()).isEmpty());
+
+        FriendGraphStats stats = userService.getFriendGraphStats();
+        assertEquals(3, stats.getEdges());
+        assertEquals(2, stats.getUsers());
+        assertTrue(stats.getBytesPerEdge() > 4);
+
+        friendGraph.rebuild();
+        assertEquals(stats, userService.getFriendGraphStats());
+    }
+
     @Test
     public void testGetGenreById() {
         Optional<Genre> optionalGenre = genreDao.findGenreById(1);
@@ -430,6 +551,124 @@ public class FilmoRateApplicationTests {
         assertFalse(bool);
     }
 
+    @Test
+    public void testLikesCountReconciliation() {
+        likesDao.addLike(film.getId(), user.getId());
+        likesDao.addLike(film.getId(), user.getId());
+
+        assertEquals(1, jdbcTemplate.queryForObject("select likes_count from films where id = ?",
+                Integer.class, film.getId()));
+
+        jdbcTemplate.update("update films set likes_count = 5 where id = ?", film.getId());
+
+        assertEquals(1, likesDao.reconcileLikesCount());
+        assertEquals(1, jdbcTemplate.queryForObject("select likes_count from films where id = ?",
+                Integer.class, film.getId()));
+    }
+
+    @Test
+    public void testGetRecommendedFilms() {
+        User other = userStorage.create(User.builder()
+                .email("other@email.ru")
+                .login("other")
+                .name("other")
+                .birthday(LocalDate.of(2000, Month.DECEMBER, 20))
+                .build());
+        User stranger = userStorage.create(User.builder()
+                .email("stranger@email.ru")
+                .login("stranger")
+                .name("stranger")
+                .birthday(LocalDate.of(2000, Month.DECEMBER, 30))
+                .build());
+
+        Film film2 = filmStorage.create(film.toBuilder().id(0).name("film2").build());
+        Film film3 = filmStorage.create(film.toBuilder().id(0).name("film3").build());
+
+        likesDao.addLike(film.getId(), user.getId());
+        likesDao.addLike(film.getId(), other.getId());
+        likesDao.addLike(film2.getId(), other.getId());
+        likesDao.addLike(film3.getId(), stranger.getId());
+
+        assertEquals(List.of(film2.getId()), userService.getRecommendedFilm(user.getId()).stream()
+                .map(Film::getId).collect(Collectors.toList()));
+
+        likesDao.removeLike(film.getId(), other.getId());
+
+        assertTrue(userService.getRecommendedFilm(user.getId()).isEmpty());
+    }
+
+    @Test
+    public void testGetSimilarFilms() {
+        User other = userStorage.create(User.builder()
+                .email("other@email.ru")
+                .login("other")
+                .name("other")
+                .birthday(LocalDate.of(2000, Month.DECEMBER, 20))
+                .build());
+
+        Film film2 = filmStorage.create(film.toBuilder().id(0).name("film2").build());
+        Film film3 = filmStorage.create(film.toBuilder().id(0).name("film3").build());
+        filmStorage.create(film.toBuilder().id(0).name("film4").build());
+
+        likesDao.addLike(film.getId(), user.getId());
+        likesDao.addLike(film.getId(), other.getId());
+        likesDao.addLike(film2.getId(), user.getId());
+        likesDao.addLike(film3.getId(), user.getId());
+        likesDao.addLike(film3.getId(), other.getId());
+        similarFilmsIndex.refresh();
+
+        assertEquals(List.of(film3.getId(), film2.getId()), filmService.getSimilar(film.getId(), 10).stream()
+                .map(Film::getId).collect(Collectors.toList()));
+        assertEquals(List.of(film3.getId()), filmService.getSimilar(film.getId(), 1).stream()
+                .map(Film::getId).collect(Collectors.toList()));
+
+        likesDao.removeLike(film3.getId(), other.getId());
+        likesDao.removeLike(film3.getId(), user.getId());
+        similarFilmsIndex.refresh();
+
+        assertEquals(List.of(film2.getId()), filmService.getSimilar(film.getId(), 10).stream()
+                .map(Film::getId).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testDeletedFilmLeavesListsItIsOnlyIn() {
+        User second = userStorage.create(User.builder()
+                .email("second@email.ru")
+                .login("second")
+                .name("second")
+                .birthday(LocalDate.of(2000, Month.DECEMBER, 20))
+                .build());
+        User third = userStorage.create(User.builder()
+                .email("third@email.ru")
+                .login("third")
+                .name("third")
+                .birthday(LocalDate.of(2000, Month.DECEMBER, 20))
+                .build());
+        Film deleted = filmStorage.create(film.toBuilder().id(0).name("deleted").build());
+        Film other = filmStorage.create(film.toBuilder().id(0).name("other").build());
+
+        likesDao.addLike(film.getId(), user.getId());
+        for (User liker : List.of(user, second, third)) {
+            likesDao.addLike(deleted.getId(), liker.getId());
+        }
+        likesDao.addLike(other.getId(), second.getId());
+        likesDao.addLike(other.getId(), third.getId());
+
+        // with one film per list the deleted film is in the list of the first one but not the other way round
+        SimilarFilmsIndex index = new SimilarFilmsIndex(likesIndex, 1);
+        index.rebuild();
+        assertEquals(List.of(deleted.getId()), index.getSimilar(film.getId(), 10));
+        assertEquals(List.of(other.getId()), index.getSimilar(deleted.getId(), 10));
+
+        filmStorage.deleteById(deleted.getId());
+        index.onFilm(new FilmEvent(deleted.getId(), Operation.REMOVE, null));
+
+        assertTrue(index.getSimilar(film.getId(), 10).isEmpty());
+        assertTrue(index.getSimilar(deleted.getId(), 10).isEmpty());
+        index.refresh();
+        assertTrue(index.getSimilar(film.getId(), 10).isEmpty());
+    }
+
     @Test
     public void testGetPopular() {
         Film testFilm = Film.builder()
@@ -480,6 +719,29 @@ public class FilmoRateApplicationTests {
                 List.of(film, testFilm, testFilm2));
     }
 
+    @Test
+    public void testGetPopularFiltersBeforeLimit() {
+        Film testFilm = Film.builder()
+                .name("film2")
+                .description("description2")
+                .releaseDate(LocalDate.of(2011, Month.DECEMBER, 20))
+                .duration(200)
+                .mpa(new Mpa(2, null, null))
+                .genres(List.of(new Genre(2, null)))
+                .directors(List.of(director))
+                .build();
+
+        filmStorage.create(testFilm);
+
+        likesDao.addLike(film.getId(), user.getId());
+
+        assertEquals(List.of(testFilm), likesDao.getPopular(1, Optional.of(2), Optional.empty()));
+        assertEquals(List.of(testFilm), likesDao.getPopular(1, Optional.empty(), Optional.of(2011)));
+        assertEquals(List.of(), likesDao.getPopular(1, Optional.of(2), Optional.of(2010)));
+        assertThrows(BadRequestException.class, () -> filmService.getPopular(0, Optional.empty(), Optional.empty()));
+        assertThrows(BadRequestException.class, () -> filmService.getPopular(-1, Optional.of(2), Optional.empty()));
+    }
+
     @Test
     public void testGetMpaById() {
         Optional<Mpa> optionalMpa = mpaDao.findMpaById(1);
@@ -614,6 +876,299 @@ public class FilmoRateApplicationTests {
         assertEquals(List.of(testFilm2, testFilm), filmStorage.searchByTitleAndDirector("search"));
     }
 
+    @Test
+    public void testSearchByTitleAndDirectorRanksEachFilmOnce() {
+        Director maker = directorStorage.add(Director.builder().name("Search Maker").build());
+        Film both = filmStorage.create(film.toBuilder().id(0).name("Search both").directors(List.of(maker)).build());
+        Film byTitle = filmStorage.create(film.toBuilder().id(0).name("Search title").build());
+        Film byDirector = filmStorage.create(film.toBuilder().id(0).name("Other").directors(List.of(maker)).build());
+
+        assertEquals(List.of(byDirector, byTitle, both), filmStorage.searchByTitleAndDirector("search"));
+
+        likesDao.addLike(both.getId(), user.getId());
+
+        assertEquals(List.of(both, byDirector, byTitle), filmStorage.searchByTitleAndDirector("search"));
+    }
+
+    @Test
+    public void testFindByDirectorSortedByLikesDescending() {
+        Film second = filmStorage.create(film.toBuilder().id(0).name("second").build());
+        Film third = filmStorage.create(film.toBuilder().id(0).name("third").build());
+        User other = userStorage.create(User.builder()
+                .email("other@email.ru")
+                .login("other")
+                .name("other")
+                .birthday(LocalDate.of(1990, 1, 1))
+                .build());
+
+        likesDao.addLike(third.getId(), user.getId());
+        likesDao.addLike(third.getId(), other.getId());
+        likesDao.addLike(second.getId(), user.getId());
+
+        assertEquals(List.of(third.getId(), second.getId(), film.getId()),
+                filmStorage.findByDirectorIdSortedByLikes(director.getId()).stream()
+                        .map(Film::getId).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testFindByIdsHydratesAcrossChunks() {
+        Director other = directorStorage.add(Director.builder().name("Other director").build());
+        List<Film> created = new ArrayList<>();
+        for (int i = 0; i < 1001; i++) {
+            created.add(film.toBuilder()
+                    .id(0)
+                    .name("chunked" + i)
+                    .genres(List.of(new Genre(1 + i % 2, null)))
+                    .directors(i % 2 == 0 ? List.of(director) : List.of(other))
+                    .build());
+        }
+        filmStorage.createAll(created);
+
+        List<Integer> ids = created.stream().map(Film::getId).collect(Collectors.toList());
+        Collections.reverse(ids);
+        List<Integer> requested = new ArrayList<>(ids);
+        requested.add(ids.get(0));
+        requested.add(Integer.MAX_VALUE);
+
+        List<Film> found = filmStorage.findByIds(requested);
+        assertEquals(ids, found.stream().map(Film::getId).collect(Collectors.toList()));
+        for (Film loaded : found) {
+            int i = Integer.parseInt(loaded.getName().substring("chunked".length()));
+            assertEquals(List.of(1 + i % 2), loaded.getGenres().stream().map(Genre::getId)
+                    .collect(Collectors.toList()));
+            assertEquals(List.of(i % 2 == 0 ? director.getId() : other.getId()), loaded.getDirectors().stream()
+                    .map(Director::getId).collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void testSearchRankedByPopularityAndFollowsDirectorRename() {
+        Film older = filmStorage.create(film.toBuilder().id(0).name("Old Searchable").build());
+        Film newer = filmStorage.create(film.toBuilder().id(0).name("New Searchable").build());
+
+        assertEquals(List.of(newer, older), filmStorage.searchByTitle("searchable"));
+
+        likesDao.addLike(older.getId(), user.getId());
+
+        assertEquals(List.of(older, newer), filmStorage.searchByTitle("searchable"));
+        assertTrue(filmStorage.searchByTitle("searchables").isEmpty());
+
+        Director renamed = directorStorage.update(director.toBuilder().name("Renamed Maker").build());
+
+        assertTrue(filmStorage.searchByDirector("director").stream()
+                .noneMatch(found -> found.getDirectors().contains(renamed)));
+        assertEquals(List.of(older.getId(), newer.getId(), film.getId()),
+                filmStorage.searchByDirector("maker").stream().map(Film::getId).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testSuggestWeightedByLikes() {
+        Film second = filmStorage.create(film.toBuilder().id(0).name("Filmography").build());
+        Film third = filmStorage.create(film.toBuilder().id(0).name("Filmmaker").build());
+        filmStorage.create(film.toBuilder().id(0).name("Other").build());
+
+        likesDao.addLike(third.getId(), user.getId());
+
+        assertEquals(List.of("Filmmaker", "film", "Filmography"), filmService.suggest("FILM", 10).stream()
+                .map(Suggestion::getText).collect(Collectors.toList()));
+        assertEquals(List.of("Filmmaker"), filmService.suggest("film", 1).stream()
+                .map(Suggestion::getText).collect(Collectors.toList()));
+
+        likesDao.removeLike(third.getId(), user.getId());
+        filmStorage.update(second.toBuilder().name("Biography").build());
+
+        assertEquals(List.of("film", "Filmmaker"), filmService.suggest("film", 10).stream()
+                .map(Suggestion::getText).collect(Collectors.toList()));
+        directorStorage.update(director.toBuilder().name("Suggested Director").build());
+
+        assertEquals(List.of("Suggested Director"), filmService.suggest("sugg", 10).stream()
+                .map(Suggestion::getText).collect(Collectors.toList()));
+        assertTrue(filmService.suggest("filmx", 10).isEmpty());
+        assertThrows(BadRequestException.class, () -> filmService.suggest("film", 11));
+        assertThrows(BadRequestException.class, () -> filmService.suggest("film", 0));
+        assertTrue(filmService.getSuggestStats().getEstimatedBytes() > 0);
+    }
+
+    @Test
+    public void testFindFilmsAndUsersByPage() {
+        Film second = filmStorage.create(film.toBuilder().id(0).name("film2").build());
+        Film third = filmStorage.create(film.toBuilder().id(0).name("film3").build());
+
+        Page<Film> first = filmService.findPage(null, 2);
+
+        assertEquals(List.of(film.getId(), second.getId()), first.getItems().stream()
+                .map(Film::getId).collect(Collectors.toList()));
+
+        Page<Film> last = filmService.findPage(first.getNext(), 2);
+
+        assertEquals(List.of(third), last.getItems());
+        assertNull(last.getNext());
+
+        Page<User> users = userService.findPage(null, 1);
+
+        assertEquals(List.of(user), users.getItems());
+        assertNull(users.getNext());
+        assertThrows(BadRequestException.class, () -> filmService.findPage("not a cursor", 2));
+        assertThrows(BadRequestException.class, () -> filmService.findPage(null, 0));
+    }
+
+    @Test
+    public void testExportFilms() throws IOException {
+        filmStorage.create(film.toBuilder().id(0).name("film2").build());
+
+        ByteArrayOutputStream ndjson = new ByteArrayOutputStream();
+        filmService.export(ExportFormat.NDJSON, ndjson);
+        String[] lines = ndjson.toString(StandardCharsets.UTF_8).split("\n");
+
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].startsWith("{\"id\":1,"));
+        assertTrue(lines[1].contains("\"name\":\"film2\""));
+        assertTrue(lines[1].contains("\"directors\":[{\"id\":" + director.getId()));
+
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        filmService.export(ExportFormat.JSON, json);
+        String array = json.toString(StandardCharsets.UTF_8);
+
+        assertEquals("[" + String.join(",", lines) + "]", array);
+        assertThrows(BadRequestException.class, () -> filmService.getExportFormat("xml"));
+    }
+
+    @Test
+    public void testCreateFilmsInBatch() {
+        Film valid = film.toBuilder().id(0).name("batch film")
+                .genres(List.of(new Genre(2, null), new Genre(1, null), new Genre(2, null)))
+                .build();
+        Film blank = film.toBuilder().id(0).name(" ").build();
+        Film unknownGenre = film.toBuilder().id(0).name("unknown genre").genres(List.of(new Genre(999, null))).build();
+        Film second = film.toBuilder().id(0).name("second batch film").genres(null).directors(null).build();
+
+        List<FilmBatchResult> results = filmService.createAll(List.of(valid, blank, unknownGenre, second));
+
+        assertEquals(4, results.size());
+        assertEquals(2, results.get(0).getId());
+        assertNull(results.get(0).getError());
+        assertNull(results.get(1).getId());
+        assertEquals("Название фильма не может быть пустым", results.get(1).getError());
+        assertEquals("Genre with id: 999 not found", results.get(2).getError());
+        assertEquals(3, results.get(3).getId());
+
+        assertEquals(valid, filmStorage.findById(2).orElseThrow());
+        assertEquals(second, filmStorage.findById(3).orElseThrow());
+        assertTrue(filmStorage.searchByTitle("batch film").contains(valid));
+        assertThrows(BadRequestException.class, () -> filmService.createAll(List.of()));
+    }
+
+    @Test
+    public void testImportLikes() throws IOException {
+        User other = userStorage.create(User.builder()
+                .email("other@email.ru")
+                .login("other")
+                .name("other")
+                .birthday(LocalDate.of(2000, Month.DECEMBER, 20))
+                .build());
+        Film film2 = filmStorage.create(film.toBuilder().id(0).name("film2").build());
+        likesDao.addLike(film.getId(), user.getId());
+
+        String ndjson = "{\"filmId\":1,\"userId\":1}\n" +
+                "{\"filmId\":1,\"userId\":2}\n" +
+                "{\"filmId\":2,\"userId\":2}\n" +
+                "{\"filmId\":2,\"userId\":2}\n" +
+                "{\"filmId\":99,\"userId\":1}\n" +
+                "{\"filmId\":2,\"userId\":99}\n";
+
+        LikeImportResult result = likeImportService.importLikes(
+                new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(6, result.getRead());
+        assertEquals(2, result.getImported());
+        assertEquals(2, result.getDuplicates());
+        assertEquals(2, result.getRejected());
+        assertEquals(List.of("Line 5: Film with id: 99 not found", "Line 6: User with id: 99 not found"),
+                result.getErrors());
+
+        assertEquals(2, jdbcTemplate.queryForObject("SELECT likes_count FROM films WHERE id = ?",
+                Integer.class, film.getId()));
+        assertEquals(List.of(film, film2), likesDao.getPopular(10, Optional.empty(), Optional.empty()));
+        assertEquals(2, userService.getFeedByUserId(other.getId()).size());
+        assertEquals(0, likesDao.reconcileLikesCount());
+
+        assertThrows(BadRequestException.class, () -> likeImportService.importLikes(
+                new ByteArrayInputStream("{\"filmId\":".getBytes(StandardCharsets.UTF_8))));
+    }
+
+    @Test
+    public void testLikeAndUnlikeAreIdempotent() {
+        assertTrue(likesDao.addLike(film.getId(), user.getId()));
+        assertFalse(likesDao.addLike(film.getId(), user.getId()));
+        assertTrue(likesDao.removeLike(film.getId(), user.getId()));
+        assertFalse(likesDao.removeLike(film.getId(), user.getId()));
+
+        filmService.addLike(film.getId(), user.getId());
+        filmService.addLike(film.getId(), user.getId());
+
+        assertEquals(1, userService.getFeedByUserId(user.getId()).size());
+        NotFoundException noFilm = assertThrows(NotFoundException.class, () -> likesDao.addLike(100, user.getId()));
+        assertEquals("Film with id: 100 not found", noFilm.getMessage());
+        NotFoundException noUser = assertThrows(NotFoundException.class, () -> likesDao.addLike(film.getId(), 100));
+        assertEquals("User with id: 100 not found", noUser.getMessage());
+    }
+
+    @Test
+    public void testConcurrentLikesOnHotFilm() throws Exception {
+        int users = 20;
+        int threads = 8;
+        int rounds = 25;
+        for (int i = 2; i <= users; i++) {
+            userStorage.create(User.builder()
+                    .email("user" + i + "@email.ru")
+                    .login("user" + i)
+                    .name("user" + i)
+                    .birthday(LocalDate.of(2000, Month.DECEMBER, 10))
+                    .build());
+        }
+
+        AtomicInteger added = new AtomicInteger();
+        AtomicInteger removed = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> tasks = new ArrayList<>();
+        long start = System.nanoTime();
+
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            tasks.add(pool.submit(() -> {
+                for (int round = 0; round < rounds; round++) {
+                    for (int userId = 1; userId <= users; userId++) {
+                        if ((round + thread + userId) % 3 == 0) {
+                            if (likesDao.removeLike(film.getId(), userId)) {
+                                removed.incrementAndGet();
+                            }
+                        } else if (likesDao.addLike(film.getId(), userId)) {
+                            added.incrementAndGet();
+                        }
+                    }
+                }
+            }));
+        }
+        for (Future<?> task : tasks) {
+            task.get();
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+        long elapsed = System.nanoTime() - start;
+        int operations = threads * rounds * users;
+        log.info("{} like/unlike operations on one film in {} ms ({} ops/s)", operations,
+                elapsed / 1_000_000, operations * 1_000_000_000L / elapsed);
+
+        int likes = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM likes_by_users WHERE id_film = ?",
+                Integer.class, film.getId());
+
+        assertEquals(added.get() - removed.get(), likes);
+        assertEquals(likes, jdbcTemplate.queryForObject("SELECT likes_count FROM films WHERE id = ?",
+                Integer.class, film.getId()));
+        assertEquals(likes, popularityIndex.getLikes(film.getId()));
+    }
+
     @Test
     public void testGetCommonFilms() {
         User user2 = User.builder()
@@ -678,5 +1233,64 @@ public class FilmoRateApplicationTests {
         likesDao.addLike(3, 2);
 
         assertEquals(filmStorage.getCommonFilms(1, 2), List.of(film, film2, film3));
+
+        likesDao.addLike(3, 3);
+        likesDao.addLike(3, 4);
+        likesDao.removeLike(1, 2);
+        assertEquals(List.of(film3, film2), filmStorage.getCommonFilms(1, 2));
+        assertTrue(filmStorage.getCommonFilms(1, 100).isEmpty());
+    }
+
+    @Test
+    public void testBrowseFilmsWithFacets() {
+        Film film2 = filmStorage.create(film.toBuilder()
+                .id(0)
+                .name("film2")
+                .releaseDate(LocalDate.of(2000, Month.JANUARY, 1))
+                .mpa(new Mpa(2, null, null))
+                .genres(List.of(new Genre(1, null), new Genre(2, null)))
+                .directors(List.of())
+                .build());
+        Film film3 = filmStorage.create(film.toBuilder()
+                .id(0)
+                .name("film3")
+                .releaseDate(LocalDate.of(2020, Month.JANUARY, 1))
+                .genres(List.of(new Genre(2, null)))
+                .build());
+        likesDao.addLike(film3.getId(), user.getId());
+
+        FilmBrowseResult everything = filmService.browse(FilmFilter.builder().build(), "likes", 10);
+        assertEquals(List.of(film3.getId(), film.getId(), film2.getId()), browsedIds(everything));
+        assertEquals(3, everything.getTotal());
+        assertEquals(Map.of(1, 2, 2, 2), everything.getFacets().get("genre"));
+        assertEquals(Map.of(1, 2, 2, 1), everything.getFacets().get("mpa"));
+        assertEquals(Map.of(director.getId(), 2), everything.getFacets().get("director"));
+        assertEquals(Map.of(2000, 1, 2010, 1, 2020, 1), everything.getFacets().get("year"));
+
+        FilmBrowseResult genre = filmService.browse(FilmFilter.builder().genre(2).build(), "year", 10);
+        assertEquals(List.of(film2.getId(), film3.getId()), browsedIds(genre));
+        assertEquals(Map.of(1, 2, 2, 2), genre.getFacets().get("genre"));
+        assertEquals(Map.of(1, 1, 2, 1), genre.getFacets().get("mpa"));
+
+        FilmBrowseResult recent = filmService.browse(
+                FilmFilter.builder().mpa(1).director(director.getId()).yearFrom(2015).build(), "likes", 10);
+        assertEquals(List.of(film3.getId()), browsedIds(recent));
+        assertEquals(Map.of(2010, 1, 2020, 1), recent.getFacets().get("year"));
+        assertEquals(Map.of(1, 1), recent.getFacets().get("mpa"));
+
+        filmStorage.update(film2.toBuilder().mpa(new Mpa(1, null, null)).build());
+        filmStorage.deleteById(film3.getId());
+        FilmBrowseResult updated = filmService.browse(FilmFilter.builder().mpa(1).build(), "year", 1);
+        assertEquals(List.of(film2.getId()), browsedIds(updated));
+        assertEquals(2, updated.getTotal());
+        assertEquals(Map.of(1, 2), updated.getFacets().get("mpa"));
+
+        assertTrue(filmService.browse(FilmFilter.builder().genre(99).build(), "likes", 10).getFilms().isEmpty());
+        assertThrows(BadRequestException.class,
+                () -> filmService.browse(FilmFilter.builder().build(), "name", 10));
+    }
+
+    private List<Integer> browsedIds(FilmBrowseResult result) {
+        return result.getFilms().stream().map(Film::getId).collect(Collectors.toList());
     }
 }
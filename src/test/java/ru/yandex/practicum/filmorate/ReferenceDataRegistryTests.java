@@ -0,0 +1,119 @@
+package ru.yandex.practicum.filmorate;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.storage.cache.FilmCache;
+import ru.yandex.practicum.filmorate.storage.cache.ReferenceDataRegistry;
+import ru.yandex.practicum.filmorate.storage.dao.DirectorDao;
+import ru.yandex.practicum.filmorate.storage.dao.FilmsDao;
+import ru.yandex.practicum.filmorate.storage.dao.GenreDao;
+import ru.yandex.practicum.filmorate.storage.dao.MpaDao;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+public class ReferenceDataRegistryTests {
+
+    private final ReferenceDataRegistry referenceDataRegistry;
+    private final MpaDao mpaDao;
+    private final GenreDao genreDao;
+    private final DirectorDao directorDao;
+    private final FilmsDao filmsDao;
+    private final FilmCache filmCache;
+    private final JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void testSeedDataIsLoadedOnce() {
+        assertEquals(mpaDao.findAll(), referenceDataRegistry.findAllMpa());
+        assertEquals(genreDao.findAll(), referenceDataRegistry.findAllGenres());
+        assertSame(referenceDataRegistry.findMpaById(1).orElseThrow(),
+                referenceDataRegistry.findMpaById(1).orElseThrow());
+        assertSame(referenceDataRegistry.findGenreById(2).orElseThrow(),
+                referenceDataRegistry.findGenreById(2).orElseThrow());
+        assertTrue(referenceDataRegistry.findMpaById(999).isEmpty());
+        assertTrue(referenceDataRegistry.findGenreById(999).isEmpty());
+    }
+
+    @Test
+    public void testDirectorChangesAreWrittenThrough() {
+        Director director = directorDao.add(Director.builder().name("Registered").build());
+        Film film = filmsDao.create(Film.builder()
+                .name("directed")
+                .description("description")
+                .releaseDate(LocalDate.of(2010, 12, 10))
+                .duration(100)
+                .mpa(new Mpa(1, null, null))
+                .directors(List.of(director))
+                .build());
+        assertEquals(director, referenceDataRegistry.findDirectorById(director.getId()).orElseThrow());
+
+        Director renamed = directorDao.update(director.toBuilder().name("Renamed").build());
+        assertEquals("Renamed", referenceDataRegistry.findDirectorById(director.getId()).orElseThrow().getName());
+        assertEquals(List.of(renamed), filmsDao.findById(film.getId()).orElseThrow().getDirectors());
+
+        directorDao.delete(director.getId());
+        assertTrue(referenceDataRegistry.findDirectorById(director.getId()).isEmpty());
+        assertFalse(referenceDataRegistry.findAllDirectors().contains(renamed));
+        assertTrue(filmsDao.findById(film.getId()).orElseThrow().getDirectors().isEmpty());
+
+        filmsDao.deleteById(film.getId());
+    }
+
+    @Test
+    public void testUnknownMpaFailsLoudly() {
+        Film film = filmsDao.create(Film.builder()
+                .name("unrated")
+                .description("description")
+                .releaseDate(LocalDate.of(2010, 12, 10))
+                .duration(100)
+                .mpa(new Mpa(1, null, null))
+                .build());
+        jdbcTemplate.update("INSERT INTO mpa(id, name) VALUES (99, 'Unknown')");
+        try {
+            jdbcTemplate.update("UPDATE films SET mpa = 99 WHERE id = ?", film.getId());
+            filmCache.invalidate(film.getId());
+
+            IllegalStateException exception = assertThrows(IllegalStateException.class,
+                    () -> filmsDao.findById(film.getId()));
+            assertTrue(exception.getMessage().contains("99"));
+        } finally {
+            filmsDao.deleteById(film.getId());
+            jdbcTemplate.update("DELETE FROM mpa WHERE id = 99");
+        }
+    }
+
+    @Test
+    public void testUnknownGenreFailsLoudly() {
+        Film film = filmsDao.create(Film.builder()
+                .name("misfiled")
+                .description("description")
+                .releaseDate(LocalDate.of(2010, 12, 10))
+                .duration(100)
+                .mpa(new Mpa(1, null, null))
+                .build());
+        jdbcTemplate.update("INSERT INTO genres(id, name) VALUES (99, 'Unknown')");
+        try {
+            jdbcTemplate.update("INSERT INTO film_genres(id_film, id_genre) VALUES (?, 99)", film.getId());
+            filmCache.invalidate(film.getId());
+
+            IllegalStateException exception = assertThrows(IllegalStateException.class,
+                    () -> filmsDao.findById(film.getId()));
+            assertTrue(exception.getMessage().contains("99"));
+        } finally {
+            filmsDao.deleteById(film.getId());
+            jdbcTemplate.update("DELETE FROM genres WHERE id = 99");
+        }
+    }
+}
@@ -5,20 +5,32 @@ import org.junit.jupiter.api.*;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.context.SpringBootTest;
+import ru.yandex.practicum.filmorate.exception.BadRequestException;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Mpa;
 import ru.yandex.practicum.filmorate.model.Review;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.service.ReviewService;
+import ru.yandex.practicum.filmorate.service.ReviewUsefulFlushJob;
+import ru.yandex.practicum.filmorate.storage.cache.ReviewTopCache;
+import ru.yandex.practicum.filmorate.storage.cache.ReviewUsefulCounters;
 import ru.yandex.practicum.filmorate.storage.dao.FilmsDao;
 import ru.yandex.practicum.filmorate.storage.dao.ReviewDao;
 import ru.yandex.practicum.filmorate.storage.dao.UsersDao;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @SpringBootTest
 @AutoConfigureTestDatabase
@@ -30,6 +42,8 @@ public class ReviewTests {
     private final UsersDao usersDao;
     private final FilmsDao filmsDao;
     private final ReviewService reviewService;
+    private final ReviewUsefulFlushJob reviewUsefulFlushJob;
+    private final ReviewTopCache reviewTopCache;
 
     @BeforeAll
     @Test
@@ -73,6 +87,32 @@ public class ReviewTests {
         assertThat(updateReview).hasFieldOrPropertyWithValue("reviewId", 1);
     }
 
+    @Test
+    @Order(4)
+    public void testReactionsAreCountedOncePerUser() {
+        usersDao.create(User.builder().id(2).login("other").email("other@mail.ru").
+                birthday(LocalDate.of(1985, 3, 1)).build());
+
+        reviewService.addLikeReview(1, 1);
+        reviewService.addLikeReview(1, 1);
+        assertThat(reviewService.findById(1).getUseful()).isEqualTo(1);
+
+        reviewService.addDislike(1, 1);
+        reviewService.addDislike(1, 2);
+        assertThat(reviewService.findById(1).getUseful()).isEqualTo(-2);
+
+        reviewService.deleteLike(1, 2);
+        reviewService.deleteDislike(1, 1);
+        assertThat(reviewService.findById(1).getUseful()).isEqualTo(-1);
+        assertThat(reviewService.findAll(1, 10)).extracting(Review::getUseful).containsExactly(-1);
+
+        reviewUsefulFlushJob.flush();
+        assertThat(reviewDao.findById(1).get().getUseful()).isEqualTo(-1);
+        assertThat(reviewService.findById(1).getUseful()).isEqualTo(-1);
+
+        assertThrows(NotFoundException.class, () -> reviewService.addLikeReview(1, 999));
+    }
+
     @Test
     @Order(5)
     public void testDeleteReview() {
@@ -82,4 +122,195 @@ public class ReviewTests {
         });
         assertThat(exception.getMessage()).contains("Отзыв не найден");
     }
+
+    @Test
+    @Order(6)
+    public void testTopReviewsFollowReactions() {
+        User user = createUser("author1");
+        Film film = createFilm("top");
+        List<User> critics = new ArrayList<>();
+        for (int i = 1; i <= 2; i++) {
+            critics.add(usersDao.create(User.builder()
+                    .email("critic" + i + "@email.ru")
+                    .login("critic" + i)
+                    .name("critic" + i)
+                    .birthday(LocalDate.of(1990, 1, 1))
+                    .build()));
+        }
+        List<Review> reviews = new ArrayList<>();
+        for (int i = 0; i <= reviewTopCache.getTopSize(); i++) {
+            reviews.add(reviewService.add(Review.builder()
+                    .content("review" + i)
+                    .isPositive(true)
+                    .userId(user.getId())
+                    .filmId(film.getId())
+                    .useful(0)
+                    .build()));
+        }
+        Review first = reviews.get(0);
+        Review second = reviews.get(1);
+        Review last = reviews.get(reviews.size() - 1);
+
+        assertEquals(reviews.subList(0, 5), reviewService.findAll(film.getId(), 5));
+
+        reviewService.addLikeReview(last.getReviewId(), critics.get(0).getId());
+        reviewService.addLikeReview(last.getReviewId(), critics.get(1).getId());
+        reviewService.addDislike(first.getReviewId(), critics.get(0).getId());
+        reviewService.delete(second.getReviewId());
+        reviewService.update(Review.builder()
+                .reviewId(reviews.get(2).getReviewId())
+                .content("edited")
+                .isPositive(false)
+                .userId(user.getId())
+                .filmId(film.getId())
+                .build());
+
+        List<Review> top = reviewService.findAll(film.getId(), 5);
+        assertEquals(last.getReviewId(), top.get(0).getReviewId());
+        assertEquals(2, top.get(0).getUseful());
+        assertEquals("edited", top.get(1).getContent());
+
+        reviewUsefulFlushJob.flush();
+        List<Review> all = reviewService.findAll(film.getId(), reviews.size() + 1);
+        assertEquals(all.subList(0, 5), top);
+        assertEquals(first.getReviewId(), all.get(all.size() - 1).getReviewId());
+        assertEquals(-1, all.get(all.size() - 1).getUseful());
+    }
+
+    @Test
+    @Order(7)
+    public void testSearchReviews() {
+        User user = createUser("author2");
+        Film film = createFilm("searched");
+        User critic = usersDao.create(User.builder()
+                .email("critic@email.ru")
+                .login("critic")
+                .name("critic")
+                .birthday(LocalDate.of(1990, 1, 1))
+                .build());
+        Film other = createFilm("other");
+
+        Review rocks = addReview(film, user, "Keanu rocks");
+        Review rules = addReview(film, user, "Keanu rules");
+        Review show = addReview(film, user, "The Keanu show, Keanu in every scene of the film");
+        Review russian = addReview(film, user, "Актёры сыграли отлично");
+        Review elsewhere = addReview(other, user, "Keanu again");
+
+        assertEquals(List.of(rocks.getReviewId(), rules.getReviewId()), searchIds("KEANU", film.getId(), 2));
+        assertEquals(List.of(rocks.getReviewId(), rules.getReviewId(), show.getReviewId()),
+                searchIds("keanu", film.getId(), 10));
+        assertEquals(4, searchIds("keanu", null, 10).size());
+        assertEquals(List.of(russian.getReviewId()), searchIds("актёрами", null, 10));
+        assertEquals(List.of(show.getReviewId()), searchIds("scenes", null, 10));
+        assertTrue(searchIds("the of in", null, 10).isEmpty());
+
+        reviewService.addLikeReview(rules.getReviewId(), critic.getId());
+        assertEquals(List.of(rules.getReviewId(), rocks.getReviewId()), searchIds("keanu", film.getId(), 2));
+        assertEquals(1, reviewService.search("keanu", film.getId(), 1).get(0).getUseful());
+
+        reviewService.delete(rules.getReviewId());
+        reviewService.update(Review.builder()
+                .reviewId(rocks.getReviewId())
+                .content("Reeves rocks")
+                .isPositive(true)
+                .userId(user.getId())
+                .filmId(film.getId())
+                .build());
+        assertEquals(List.of(elsewhere.getReviewId(), show.getReviewId()), searchIds("keanu", null, 10));
+        assertEquals(List.of(rocks.getReviewId()), searchIds("reeves", null, 10));
+
+        filmsDao.deleteById(other.getId());
+        assertEquals(List.of(show.getReviewId()), searchIds("keanu", null, 10));
+        assertThrows(BadRequestException.class, () -> reviewService.search("keanu", null, 0));
+    }
+
+    @Test
+    @Order(8)
+    public void testUsefulCountersAreWrittenOutsideTheLock() throws InterruptedException {
+        ReviewUsefulCounters counters = new ReviewUsefulCounters();
+        counters.add(1, 2);
+        counters.add(2, 1);
+        counters.add(2, -1);
+
+        assertThrows(IllegalStateException.class, () -> counters.flush(deltas -> {
+            throw new IllegalStateException("write failed");
+        }));
+        assertThat(counters.get(1)).isEqualTo(2);
+
+        Map<Integer, Long> written = new HashMap<>();
+        assertThat(counters.flush(deltas -> {
+            Thread reaction = new Thread(() -> counters.add(1, 1));
+            reaction.start();
+            assertDoesNotThrow(() -> reaction.join(1000));
+            assertThat(reaction.isAlive()).isFalse();
+            assertThat(counters.get(1)).isEqualTo(3);
+            written.putAll(deltas);
+        })).isEqualTo(1);
+
+        assertThat(written).isEqualTo(Map.of(1, 2L));
+        assertThat(counters.get(1)).isEqualTo(1);
+        assertThat(counters.get(2)).isZero();
+    }
+
+    @Test
+    @Order(9)
+    public void testPendingReactionsOrderTheFirstLoad() {
+        User author = createUser("author3");
+        User critic = createUser("critic3");
+        Film film = createFilm("reordered");
+        Review first = addReview(film, author, "first");
+        Review second = addReview(film, author, "second");
+
+        reviewService.addLikeReview(second.getReviewId(), critic.getId());
+        assertEquals(List.of(second.getReviewId(), first.getReviewId()), topIds(film));
+        assertEquals(1, reviewService.findAll(film.getId(), 1).get(0).getUseful());
+
+        reviewUsefulFlushJob.flush();
+        reviewService.addDislike(second.getReviewId(), author.getId());
+        reviewService.addLikeReview(first.getReviewId(), critic.getId());
+        assertEquals(List.of(first.getReviewId(), second.getReviewId()), topIds(film));
+        assertEquals(List.of(1, 0), reviewService.findAll(film.getId(), 2).stream()
+                .map(Review::getUseful).collect(Collectors.toList()));
+    }
+
+    private User createUser(String login) {
+        return usersDao.create(User.builder()
+                .email(login + "@mail.ru")
+                .login(login)
+                .name(login)
+                .birthday(LocalDate.of(1990, 1, 1))
+                .build());
+    }
+
+    private Film createFilm(String name) {
+        return filmsDao.create(Film.builder()
+                .name(name)
+                .description("description")
+                .releaseDate(LocalDate.of(2010, 12, 10))
+                .duration(100)
+                .mpa(new Mpa(1, null, null))
+                .build());
+    }
+
+    private Review addReview(Film reviewed, User author, String content) {
+        return reviewService.add(Review.builder()
+                .content(content)
+                .isPositive(true)
+                .userId(author.getId())
+                .filmId(reviewed.getId())
+                .useful(0)
+                .build());
+    }
+
+    private List<Integer> topIds(Film film) {
+        return reviewService.findAll(film.getId(), 2).stream()
+                .map(Review::getReviewId)
+                .collect(Collectors.toList());
+    }
+
+    private List<Integer> searchIds(String query, Integer filmId, int count) {
+        return reviewService.search(query, filmId, count).stream()
+                .map(Review::getReviewId)
+                .collect(Collectors.toList());
+    }
 }